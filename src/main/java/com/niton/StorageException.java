@@ -4,4 +4,8 @@ public class StorageException extends RuntimeException{
 	public StorageException(Throwable cause) {
 		super(cause);
 	}
+
+	public StorageException(String message) {
+		super(message);
+	}
 }
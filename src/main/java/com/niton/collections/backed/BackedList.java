@@ -4,6 +4,8 @@ import com.niton.StorageException;
 import com.niton.collections.DefaultIterator;
 import com.niton.collections.ProxyList;
 import com.niton.memory.direct.NegativeIndexException;
+import com.niton.memory.direct.Preloader;
+import com.niton.memory.direct.managed.AllocationMode;
 import com.niton.memory.direct.managed.BitSystem;
 import com.niton.memory.direct.managed.Section;
 import com.niton.memory.direct.managed.VirtualMemory;
@@ -32,8 +34,15 @@ public class BackedList<T> extends AbstractList<T> implements RandomAccess{
 	private final Serializer<T> serializer;
 
 	public BackedList(DataStore store, Serializer<T> serializer,boolean read) {
+		this(store,serializer,read,AllocationMode.SHIFTING);
+	}
+
+	/**
+	 * @param mode {@link AllocationMode#RELOCATING} makes growing elements cheap for big lists, a list has to be read with the mode it was created with
+	 */
+	public BackedList(DataStore store, Serializer<T> serializer,boolean read,AllocationMode mode) {
 		this.serializer = serializer;
-		this.memory = new VirtualMemory(store, BitSystem.X32);
+		this.memory = new VirtualMemory(store, BitSystem.X32, mode);
 		if(read){
 			memory.readIndex();
 		}else{
@@ -225,6 +234,39 @@ public class BackedList<T> extends AbstractList<T> implements RandomAccess{
 		return new DefaultIterator<>(this,i);
 	}
 
+	/**
+	 * Makes sure all changes to the list survive a crash
+	 * @see DataStore#sync()
+	 */
+	public void sync() {
+		memory.sync();
+	}
+
+	/**
+	 * Copies the raw data of the list into another store without deserializing any element.
+	 * The copy can be opened with {@code new BackedList<>(target, serializer, true)}
+	 * @param target the store to copy to
+	 */
+	public void transferTo(DataStore target) {
+		memory.transferTo(target);
+	}
+
+	/**
+	 * Creates a {@link Preloader} to warm up the list after opening it, call {@link Preloader#start()} to load it in the background
+	 * @param wholeStore true to load all elements, false to only load the index
+	 */
+	public Preloader preload(boolean wholeStore) {
+		return memory.preload(wholeStore);
+	}
+
+	/**
+	 * Gives the unused space of the elements ({@link #reservedObjectSpace}) and of removed elements back to the store
+	 * @see VirtualMemory#compactor()
+	 */
+	public void compact() {
+		memory.compact();
+	}
+
 	VirtualMemory getMemory() {
 		return memory;
 	}
@@ -3,12 +3,14 @@ package com.niton.collections.backed;
 import com.niton.StorageException;
 import com.niton.collections.BaseCollection;
 import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.Preloader;
+import com.niton.memory.direct.managed.AllocationMode;
 import com.niton.memory.direct.managed.BitSystem;
 import com.niton.memory.direct.managed.Section;
 import com.niton.memory.direct.managed.VirtualMemory;
 
-import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class BackedMap<K,V> implements Map<K,V> {
@@ -29,7 +31,7 @@ public class BackedMap<K,V> implements Map<K,V> {
 	private final VirtualMemory mainMemory;
 	private final Serializer<K> keySerializer;
 	private final Serializer<V> valueSerializer;
-	private final HashMap<Long,int[]> poolInfoCache = new HashMap<>();
+	private final Map<Long,int[]> poolInfoCache = new ConcurrentHashMap<>();
 	public int KEY_SIZE_ALLOC = 128;
 	public int VALUE_SIZE_ALLOC = 512;
 	public boolean useSizeCaching = true;
@@ -42,7 +44,15 @@ public class BackedMap<K,V> implements Map<K,V> {
 	}
 
 	public BackedMap(DataStore mainMemory, Serializer<K> keySerializer, Serializer<V> valueSerializer, boolean read) {
-		this.mainMemory = new VirtualMemory(mainMemory,BitSystem.X32);
+		this(mainMemory,keySerializer,valueSerializer,read,AllocationMode.SHIFTING);
+	}
+
+	/**
+	 * @param mode the layout of the memories of the map, {@link AllocationMode#CHAINED} makes growing entries O(1) amortized.
+	 *             A map has to be read with the mode it was created with
+	 */
+	public BackedMap(DataStore mainMemory, Serializer<K> keySerializer, Serializer<V> valueSerializer, boolean read, AllocationMode mode) {
+		this.mainMemory = new VirtualMemory(mainMemory,BitSystem.X32,mode);
 		this.keySerializer = keySerializer;
 		this.valueSerializer = valueSerializer;
 		if(read) {
@@ -56,8 +66,8 @@ public class BackedMap<K,V> implements Map<K,V> {
 			this.mainMemory.createSection(VALUE_SIZE_ALLOC+keyHashes.getHeaderSize(),512);//VALUE_SEGMENT
 			this.mainMemory.createSection(KEY_SIZE_ALLOC+keyHashes.getHeaderSize(), 512); //KEY_SEGMENT
 		}
-		dataSegment = new VirtualMemory(this.mainMemory.get(1));
-		keySegment = new VirtualMemory(this.mainMemory.get(2));
+		dataSegment = new VirtualMemory(this.mainMemory.get(1),BitSystem.X32,mode);
+		keySegment = new VirtualMemory(this.mainMemory.get(2),BitSystem.X32,mode);
 		if(!read){
 			//16 can be tweaked for performance
 			dataSegment.initIndex(128);
@@ -77,6 +87,46 @@ public class BackedMap<K,V> implements Map<K,V> {
 		this.VALUE_SIZE_ALLOC = VALUE_SIZE_ALLOC;
 		return this;
 	}
+	/**
+	 * Makes sure all changes to the map survive a crash
+	 * @see DataStore#sync()
+	 */
+	public void sync() {
+		mainMemory.sync();
+	}
+
+	/**
+	 * Creates a {@link Preloader} to warm up the map after opening it, call {@link Preloader#start()} to load it in the background
+	 * @param wholeStore true to load all entries, false to only load the indices and the key hashes, which every lookup needs
+	 */
+	public Preloader preload(boolean wholeStore) {
+		if(wholeStore)
+			return mainMemory.preload(true);
+		Preloader preloader = mainMemory.preload(false).add(keyHashes);
+		dataSegment.preloadIndex(preloader);
+		keySegment.preloadIndex(preloader);
+		return preloader;
+	}
+
+	/**
+	 * Copies the raw data of the map into another store without deserializing any entry.
+	 * The copy can be opened with {@code new BackedMap<>(target, keySerializer, valueSerializer, true)}
+	 * @param target the store to copy to
+	 */
+	public void transferTo(DataStore target) {
+		mainMemory.transferTo(target);
+	}
+
+	/**
+	 * Gives the unused space of the entries ({@link #KEY_SIZE_ALLOC}, {@link #VALUE_SIZE_ALLOC}) and of removed entries back to the store
+	 * @see VirtualMemory#compactor()
+	 */
+	public void compact() {
+		dataSegment.compact();
+		keySegment.compact();
+		mainMemory.compact();
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		return obj != null && obj instanceof Map && ((Map<?, ?>) obj).size() == size() && entrySet().containsAll(((Map<?, ?>) obj).entrySet());
@@ -87,22 +137,14 @@ public class BackedMap<K,V> implements Map<K,V> {
 	public int size() {
 		if(useSizeCaching && sizeCached)
 			return sizeCache;
-		try {
-			int s = 0;
-			DataInputStream dis = new DataInputStream(new BufferedInputStream(keyHashes.openReadStream(),4));
-			keyHashes.jump(0);
-			int pools = getHashPoolCount();
-			for(int i = 0; i< pools; i++){
-				keyHashes.skip(8);
-				long poolSize = dis.readInt();
-				s += poolSize;
-			}
-			sizeCache = s;
-			sizeCached = true;
-			return s;
-		}catch (IOException e){
-			throw new StorageException(e);
+		int s = 0;
+		int pools = getHashPoolCount();
+		for(int i = 0; i< pools; i++){
+			s += keyHashes.readWord(i*KEY_HASH_PAIR_SIZE+8,BitSystem.X32);
 		}
+		sizeCache = s;
+		sizeCached = true;
+		return s;
 	}
 
 	@Override
@@ -175,31 +217,16 @@ public class BackedMap<K,V> implements Map<K,V> {
 	}
 
 	private void alterHashPoolSize(int address, int enlargement) {
-		DataInputStream dis = new DataInputStream(new BufferedInputStream(keyHashes.openReadStream(),12));
-		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(keyHashes.openWritingStream(),4));
-		keyHashes.jump(address);
-		try {
-			long hash = dis.readLong();
-			int old = dis.readInt();
-			keyHashes.jump(address+8);
-			dos.writeInt(old+enlargement);
-			dos.flush();
-			poolInfoCache.get(hash)[2] += enlargement;
-		} catch (IOException e) {
-			throw new StorageException(e);
-		}
+		long hash = keyHashes.readWord(address,BitSystem.X64);
+		long old = keyHashes.readWord(address+8,BitSystem.X32);
+		keyHashes.writeWord(address+8,old+enlargement,BitSystem.X32);
+		poolInfoCache.get(hash)[2] += enlargement;
 	}
 
 	private void createHashPool(long hash,int size) {
-		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(keyHashes.openWritingStream(),12));
-		keyHashes.jumpToEnd();
-		try {
-			dos.writeLong(hash);
-			dos.writeInt(size);
-			dos.flush();
-		} catch (IOException e) {
-			throw new StorageException(e);
-		}
+		long address = keyHashes.size();
+		keyHashes.writeWord(address,hash,BitSystem.X64);
+		keyHashes.writeWord(address+8,size,BitSystem.X32);
 	}
 
 	private int getKeyIndex(Object key) {
@@ -235,26 +262,21 @@ public class BackedMap<K,V> implements Map<K,V> {
 	 * </code>
 	 */
 	private int[] getHashPoolInfo(long hash) {
-		if(useCaching && poolInfoCache.containsKey(hash))
-			return poolInfoCache.get(hash);
+		int[] cached = useCaching ? poolInfoCache.get(hash) : null;
+		if(cached != null)
+			return cached;
 		int from = 0;
 		int pools = getHashPoolCount();
-		DataInputStream poolReader = new DataInputStream(new BufferedInputStream(keyHashes.openReadStream(),4));
-		keyHashes.jump(0);
-		try {
-			for (int i = 0; i < pools; i++) {
-				long poolHash = poolReader.readLong();
-				int size = poolReader.readInt();
-				if(poolHash == hash){
-					int[] info = new int[]{i*KEY_HASH_PAIR_SIZE,from,from+size-1};
-					poolInfoCache.put(hash,Arrays.copyOf(info,info.length));
-					return info;
-				}else{
-					from += size;
-				}
+		for (int i = 0; i < pools; i++) {
+			long poolHash = keyHashes.readWord(i*KEY_HASH_PAIR_SIZE,BitSystem.X64);
+			int size = (int) keyHashes.readWord(i*KEY_HASH_PAIR_SIZE+8,BitSystem.X32);
+			if(poolHash == hash){
+				int[] info = new int[]{i*KEY_HASH_PAIR_SIZE,from,from+size-1};
+				poolInfoCache.put(hash,Arrays.copyOf(info,info.length));
+				return info;
+			}else{
+				from += size;
 			}
-		} catch (IOException e) {
-			throw new StorageException(e);
 		}
 		return new int[0];
 	}
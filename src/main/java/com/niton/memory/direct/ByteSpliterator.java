@@ -0,0 +1,85 @@
+package com.niton.memory.direct;
+
+import java.nio.ByteBuffer;
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+/**
+ * Iterates over the (unsigned) bytes of an address range of a {@link DataStore}.<br>
+ * The bytes are read lazily in chunks, so only one chunk per spliterator is in memory.
+ * Splitting divides the remaining address range at a chunk border.
+ * @see DataStore#bytes(long, long)
+ */
+final class ByteSpliterator implements Spliterator.OfInt {
+	private final DataStore store;
+	private final ByteBuffer buffer;
+	/**
+	 * The address of the first byte which is not in the buffer yet
+	 */
+	private long next;
+	private final long end;
+
+	ByteSpliterator(DataStore store, long from, long to, int chunkSize) {
+		this.store = store;
+		this.next = from;
+		this.end = to;
+		this.buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(chunkSize, to - from)));
+		buffer.limit(0);
+	}
+
+	private boolean fill() {
+		if(next >= end)
+			return false;
+		buffer.clear();
+		buffer.limit((int) Math.min(buffer.capacity(), end - next));
+		store.innerRead(next, buffer);
+		buffer.flip();
+		next += buffer.limit();
+		return true;
+	}
+
+	@Override
+	public boolean tryAdvance(IntConsumer action) {
+		if(!buffer.hasRemaining() && !fill())
+			return false;
+		action.accept(buffer.get() & 0xFF);
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(IntConsumer action) {
+		do {
+			byte[] data = buffer.array();
+			for (int i = buffer.position(); i < buffer.limit(); i++)
+				action.accept(data[i] & 0xFF);
+			buffer.position(buffer.limit());
+		} while (fill());
+	}
+
+	/**
+	 * Splits off the first half of the remaining range. Bytes which are buffered but not consumed yet belong to the prefix
+	 */
+	@Override
+	public Spliterator.OfInt trySplit() {
+		int chunkSize = buffer.capacity();
+		long start = next - buffer.remaining();
+		long chunks = (end - start) / chunkSize;
+		if(chunks < 2)
+			return null;
+		long middle = start + chunks / 2 * chunkSize;
+		Spliterator.OfInt prefix = new ByteSpliterator(store, start, middle, chunkSize);
+		buffer.limit(0);
+		next = middle;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return buffer.remaining() + (end - next);
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | NONNULL;
+	}
+}
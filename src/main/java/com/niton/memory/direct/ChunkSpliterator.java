@@ -0,0 +1,57 @@
+package com.niton.memory.direct;
+
+import java.nio.ByteBuffer;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Iterates over an address range of a {@link DataStore} in chunks. Each chunk is read into a new {@link ByteBuffer} when it is consumed.
+ * Splitting divides the remaining address range at a chunk border.
+ * @see DataStore#chunks(long, long, int)
+ */
+final class ChunkSpliterator implements Spliterator<ByteBuffer> {
+	private final DataStore store;
+	private final int chunkSize;
+	private long next;
+	private final long end;
+
+	ChunkSpliterator(DataStore store, long from, long to, int chunkSize) {
+		this.store = store;
+		this.chunkSize = chunkSize;
+		this.next = from;
+		this.end = to;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super ByteBuffer> action) {
+		if(next >= end)
+			return false;
+		ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(chunkSize, end - next));
+		store.innerRead(next, chunk);
+		chunk.flip();
+		next += chunk.limit();
+		action.accept(chunk);
+		return true;
+	}
+
+	@Override
+	public Spliterator<ByteBuffer> trySplit() {
+		long chunks = (end - next) / chunkSize;
+		if(chunks < 2)
+			return null;
+		long middle = next + chunks / 2 * chunkSize;
+		Spliterator<ByteBuffer> prefix = new ChunkSpliterator(store, next, middle, chunkSize);
+		next = middle;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return (end - next + chunkSize - 1) / chunkSize;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | NONNULL;
+	}
+}
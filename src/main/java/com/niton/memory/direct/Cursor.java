@@ -0,0 +1,180 @@
+package com.niton.memory.direct;
+
+import com.niton.StorageException;
+import com.niton.collections.backed.Serializer;
+import com.niton.memory.direct.managed.BitSystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A position in a {@link DataStore} which is independent of the marker of the store.<br>
+ * Each thread reading (or writing) a store sequentially should use its own cursor, the store itself is only accessed
+ * with positional reads and writes. A cursor itself is not thread safe.
+ * @see DataStore#openCursor(long)
+ */
+public class Cursor {
+	private final DataStore store;
+	private long position;
+
+	public Cursor(DataStore store, long position) {
+		if(position < 0)
+			throw new NegativeIndexException();
+		this.store = store;
+		this.position = position;
+	}
+
+	public DataStore getStore() {
+		return store;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	public void jump(long position) {
+		if(position < 0)
+			throw new NegativeIndexException();
+		this.position = position;
+	}
+
+	public long skip(long bytes) {
+		jump(position + bytes);
+		return position;
+	}
+
+	/**
+	 * @return the (unsigned) byte at the position
+	 */
+	public int read() {
+		int value = DataStore.unsignedByte(store.innerRead(position, position+1))[0];
+		position++;
+		return value;
+	}
+
+	public byte[] readNext(long len) {
+		byte[] data = store.innerRead(position, position+len);
+		position += len;
+		return data;
+	}
+
+	/**
+	 * Fills the remaining bytes of the buffer
+	 */
+	public void read(ByteBuffer dst) {
+		int len = dst.remaining();
+		store.innerRead(position, dst);
+		position += len;
+	}
+
+	public void write(int data) {
+		store.innerWrite(new byte[]{(byte) data}, position, position+1);
+		position++;
+	}
+
+	public void write(byte[] data) {
+		store.innerWrite(data, position, position+data.length);
+		position += data.length;
+	}
+
+	/**
+	 * Writes the remaining bytes of the buffer
+	 */
+	public void write(ByteBuffer src) {
+		int len = src.remaining();
+		store.innerWrite(position, src);
+		position += len;
+	}
+
+	/**
+	 * Reads a word and moves the cursor behind it
+	 * @see DataStore#readWord(long, BitSystem)
+	 */
+	public long readWord(BitSystem bits) {
+		long word = store.readWord(position, bits);
+		position += bits.getBase();
+		return word;
+	}
+
+	/**
+	 * Writes a word and moves the cursor behind it
+	 * @see DataStore#writeWord(long, long, BitSystem)
+	 */
+	public void writeWord(long value, BitSystem bits) {
+		store.writeWord(position, value, bits);
+		position += bits.getBase();
+	}
+
+	/**
+	 * Reads an object starting at the position of the cursor
+	 * @throws StorageException when reading goes wrong
+	 */
+	public <T> T read(Serializer<T> serializer) {
+		try {
+			return serializer.read(openReadStream());
+		} catch (IOException | ClassNotFoundException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	/**
+	 * Writes an object starting at the position of the cursor
+	 * @throws StorageException when writing goes wrong
+	 */
+	public <T> void write(T value, Serializer<T> serializer) {
+		try {
+			serializer.write(value, openWritingStream());
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	/**
+	 * @return a stream reading at (and moving) the position of this cursor
+	 */
+	public InputStream openReadStream() {
+		return new CursorInputStream();
+	}
+
+	/**
+	 * @return a stream writing at (and moving) the position of this cursor
+	 */
+	public OutputStream openWritingStream() {
+		return new CursorOutputStream();
+	}
+
+	@Override
+	public String toString() {
+		return "Cursor{" +
+				"position=" + position +
+				", store=" + store.getClass().getSimpleName() +
+				'}';
+	}
+
+	private class CursorInputStream extends InputStream {
+		@Override
+		public int read() throws IOException {
+			return Cursor.this.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			Cursor.this.read(ByteBuffer.wrap(b, off, len));
+			return len;
+		}
+	}
+
+	private class CursorOutputStream extends OutputStream {
+		@Override
+		public void write(int b) throws IOException {
+			Cursor.this.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			Cursor.this.write(ByteBuffer.wrap(b, off, len));
+		}
+	}
+}
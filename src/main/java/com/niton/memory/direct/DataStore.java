@@ -2,14 +2,29 @@ package com.niton.memory.direct;
 
 import com.niton.StorageException;
 import com.niton.collections.backed.Serializer;
+import com.niton.memory.direct.managed.BitSystem;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
 import java.util.stream.*;
 
+/**
+ * A randomly accessible block of bytes.<br>
+ * The positional methods ({@link #read(long, long)}, {@link #write(long, ByteBuffer)}, {@link #readWord(long, BitSystem)}, ...)
+ * do not change any state besides the data, so they can be used by multiple threads as long as the store itself supports it.
+ * The methods without an address ({@link #read()}, {@link #readNext(long)}, {@link #write(byte[])}, the streams, ...) work at the marker and move it.
+ * Since there is only one marker per store, threads should {@link #openCursor() open a cursor} instead.
+ */
 public abstract class DataStore {
+	/**
+	 * The maximum number of bytes {@link #copyRange(long, long, DataStore, long)} buffers at once (1 MB)
+	 */
+	public static final int TRANSFER_CHUNK_SIZE = 1024*1024;
 	public int bufferSize = 1024*4;
 	private long marker = 0;
 
@@ -19,7 +34,9 @@ public abstract class DataStore {
 	public abstract long size();
 	//public static final int byteShift = Byte.MIN_VALUE;
 	public int read() {
-		return unsignedByte(innerRead(marker, marker +1))[0];
+		int value = unsignedByte(innerRead(marker, marker +1))[0];
+		marker++;
+		return value;
 	}
 
 	public static int[] unsignedByte(byte[] innerRead) {
@@ -39,7 +56,9 @@ public abstract class DataStore {
 	}
 
 	public byte[] readNext(long len) {
-		return innerRead(marker, marker +len);
+		byte[] data = innerRead(marker, marker +len);
+		marker += len;
+		return data;
 	}
 
 	/**
@@ -53,33 +72,56 @@ public abstract class DataStore {
 	}
 
 	/**
-	 * Reads a portion of the datastore
+	 * Reads a portion of the datastore. Implementations must not change the marker
 	 * @param from the index (inclusive) in the datastore to start the read from
 	 * @param to the index (exclusive) in the datastore to start in the datastore to end the read at
 	 * @return the data
 	 */
 	protected abstract byte[] innerRead(long from,long to);
 
+	/**
+	 * Reads {@code dst.remaining()} bytes starting at {@code from} into the buffer without allocating an array
+	 * @param from the index in the datastore to start reading at
+	 * @param dst the buffer to read into
+	 */
+	public void read(long from, ByteBuffer dst) {
+		innerRead(from,dst);
+	}
+
+	/**
+	 * Reads a portion of the datastore into a buffer. Stores should override this method
+	 * (and build {@link #innerRead(long, long)} on top of it) to read without copying.
+	 * The default implementation uses {@link #innerRead(long, long)}
+	 * @param from the index (inclusive) in the datastore to start the read from
+	 * @param dst the buffer to fill, its remaining bytes define the length of the read
+	 */
+	protected void innerRead(long from, ByteBuffer dst) {
+		dst.put(innerRead(from,from+dst.remaining()));
+	}
+
 	public int read(long index) {
 		return unsignedByte(innerRead(index,++index))[0];
 	}
 
 	public void write(int data) {
 		innerWrite(signedByte(new int[]{data}), marker, marker +1);
+		marker++;
 	}
 
 	public void writeNext(byte[] data, int len) {
 		innerWrite(data, marker, marker +len);
+		marker += len;
 	}
 	public void write(byte[] data){
 		innerWrite(data, marker, marker + data.length);
+		marker += data.length;
 	}
 	public void write(byte[] data, long from, long to) {
 		innerWrite(data,from,to);
 	}
 
 	/**
-	 * Writes data into the datatastore
+	 * Writes data into the datatastore. Implementations must not change the marker
 	 * @param data the data to write
 	 * @param from the index to start writing to
 	 * @param to the last index to write to
@@ -87,6 +129,56 @@ public abstract class DataStore {
 	 */
 	protected abstract void innerWrite(byte[] data,long from,long to);
 
+	/**
+	 * Writes the remaining bytes of the buffer into the store
+	 * @param to the index to start writing to
+	 * @param src the data to write
+	 */
+	public void write(long to, ByteBuffer src) {
+		innerWrite(to,src);
+	}
+
+	/**
+	 * Writes the remaining bytes of a buffer into the datastore. Stores should override this method
+	 * (and build {@link #innerWrite(byte[], long, long)} on top of it) to write without copying.
+	 * The default implementation uses {@link #innerWrite(byte[], long, long)}
+	 * @param to the index to start writing to
+	 * @param src the data to write
+	 */
+	protected void innerWrite(long to, ByteBuffer src) {
+		byte[] data = new byte[src.remaining()];
+		src.get(data);
+		innerWrite(data,to,to+data.length);
+	}
+
+	/**
+	 * Reads a single (big endian) word, like an address or a size, at the given address.
+	 * The marker is not changed.<br>
+	 * Stores should override this method to read the word without allocating anything
+	 * @param address the address of the first byte of the word
+	 * @param bits the width of the word
+	 * @return the (sign extended) word
+	 */
+	public long readWord(long address, BitSystem bits) {
+		ByteBuffer buffer = ByteBuffer.allocate(bits.getBase());
+		innerRead(address,buffer);
+		return bits.get(buffer,0);
+	}
+
+	/**
+	 * Writes a single (big endian) word, like an address or a size, at the given address.
+	 * The marker is not changed.<br>
+	 * Stores should override this method to write the word without allocating anything
+	 * @param address the address of the first byte of the word
+	 * @param value the value to write
+	 * @param bits the width of the word
+	 */
+	public void writeWord(long address, long value, BitSystem bits) {
+		ByteBuffer buffer = ByteBuffer.allocate(bits.getBase());
+		bits.put(buffer,0,value);
+		innerWrite(address,buffer);
+	}
+
 	public long skip(long size){
 		marker += size;
 		return marker;
@@ -127,12 +219,7 @@ public abstract class DataStore {
 	 * @return
 	 */
 	public <K> K read(Serializer<K> keySerializer) {
-		jump(0);
-		try {
-			return keySerializer.read(openReadStream());
-		} catch (IOException | ClassNotFoundException e) {
-			throw new StorageException(e);
-		}
+		return openCursor().read(keySerializer);
 	}
 
 	public <T> void write(T value, Serializer<T> valueSerializer) {
@@ -145,8 +232,7 @@ public abstract class DataStore {
 	}
 
 	/**
-	 * Marker is moved to the end<br>
-	 *     Attention! Only works with datastores smaller than integer.max_value
+	 * Attention! Only works with datastores smaller than integer.max_value
 	 * @return the whole data of this store as byte[]
 	 */
 	public byte[] readFull() {
@@ -162,7 +248,8 @@ public abstract class DataStore {
 
 		@Override
 		public void write(byte[] b, int off, int len) throws IOException {
-			innerWrite(Arrays.copyOfRange(b,off,off+len),marker,marker+len);
+			innerWrite(marker,ByteBuffer.wrap(b,off,len));
+			marker += len;
 		}
 	}
 
@@ -175,7 +262,8 @@ public abstract class DataStore {
 
 		@Override
 		public int read(byte[] b, int off, int len) throws IOException {
-			System.arraycopy(DataStore.this.innerRead(marker,marker+len),0,b,off,len);
+			DataStore.this.innerRead(marker,ByteBuffer.wrap(b,off,len));
+			marker += len;
 			return len;
 		}
 	}
@@ -248,49 +336,199 @@ public abstract class DataStore {
 		if(lenght == 0)
 			return;
 
-		boolean startAtEnd = offset>0;
 		long origin = getMarker();
-		lenght = performBufferShift(offset, lenght, startAtEnd, origin);
-		performShift(offset, lenght, getMarker());
+		move(origin, origin+offset, lenght);
 		jump(origin+offset);
 	}
 
 	/**
-	 * Shifts blocks of buffers
-	 * @param offset the ammount to shift the data by
-	 * @param length the number of bytes to shift. Should be bigger than bufferSize. If it is not this method skips
-	 * @param startAtEnd if true the shifting is done backwards, depends on the shifting direction
-	 * @param origin the position to start shifting the data from
-	 * @return the remaining bytes (allways smaller or equal to bufferSize)
-	 */
-	private long performBufferShift(long offset, long length, boolean startAtEnd, long origin) {
-		while (length > bufferSize) {
-			if(startAtEnd) {
-				length -= bufferSize;
-				jump(origin + length);
-				performShift(offset, bufferSize,getMarker());
-				skip(-(offset+length));
-			}else {
-				performShift(offset, bufferSize,getMarker());
-				skip(-offset+bufferSize);
-				length -= bufferSize;
-			}
+	 * Copies a block of bytes to another position in this store. The source and target range may overlap.<br>
+	 * The marker is not changed. Stores should override this method to move the data in bulk,
+	 * the default implementation copies the data in chunks of {@link #moveChunkSize()} bytes
+	 * @param from the start of the data to move
+	 * @param to the address the data should be moved to
+	 * @param length the number of bytes to move
+	 */
+	public void move(long from, long to, long length) {
+		moveBuffered(from, to, length);
+	}
+
+	/**
+	 * Moves data through a buffer using {@link #innerRead(long, ByteBuffer)} and {@link #innerWrite(long, ByteBuffer)},
+	 * for stores which can not delegate {@link #move(long, long, long)} to a store below them
+	 */
+	protected final void moveBuffered(long from, long to, long length) {
+		if(length <= 0 || from == to)
+			return;
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, Math.max(moveChunkSize(), 1)));
+		//when moving towards the end the last chunk has to be moved first, so it is not overwritten
+		boolean startAtEnd = to > from;
+		long done = 0;
+		while (done < length) {
+			int chunk = (int) Math.min(buffer.capacity(), length - done);
+			long offset = startAtEnd ? length - done - chunk : done;
+			buffer.clear();
+			buffer.limit(chunk);
+			innerRead(from + offset, buffer);
+			buffer.flip();
+			innerWrite(to + offset, buffer);
+			done += chunk;
 		}
-		return length;
 	}
 
 	/**
-	 * Performs the read/write operations of a shift
-	 * @param offset the ammout to shift the data by
-	 * @param lenght ammount of data to shift. should be smaller than {@link DataStore#bufferSize}
-	 * @param origin the position to shift from
+	 * Overwrites a range with 0 using {@link #innerWrite(long, ByteBuffer)}, for stores which keep the bytes behind a {@link #cut(long)}
+	 * so that they read as 0 when the store grows again
 	 */
-	private void performShift(long offset, long lenght, long origin) {
-		jump(origin);
-		byte[] dataToShift = readNext(lenght);
-		jump(origin + offset);
-		write(dataToShift);
-		jump(origin + offset);
+	protected final void clear(long from, long to) {
+		if(to <= from)
+			return;
+		ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(to - from, Math.max(moveChunkSize(), 1)));
+		for (long address = from; address < to; address += zeros.capacity()) {
+			zeros.clear();
+			zeros.limit((int) Math.min(zeros.capacity(), to - address));
+			innerWrite(address, zeros);
+		}
+	}
+
+	/**
+	 * @return the size of the chunks {@link #move(long, long, long)} copies at once, {@link #bufferSize} by default
+	 */
+	protected int moveChunkSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Loads a range of the store into memory (eg. the page cache of the operating system or the cache of a wrapping store),
+	 * so later reads do not have to wait for the disk.
+	 * @see #preload(long, long, LongConsumer)
+	 */
+	public void preload(long from, long to) {
+		preload(from,to,loaded -> {});
+	}
+
+	/**
+	 * Loads a range of the store into memory. Stores should override this method if they have a better way than reading,
+	 * the default implementation reads the range sequentially in chunks of up to {@link #TRANSFER_CHUNK_SIZE} bytes
+	 * @param from the start of the range (inclusive)
+	 * @param to the end of the range (exclusive), bytes behind the end of the store are ignored
+	 * @param loaded called with the number of bytes loaded after each step
+	 */
+	public void preload(long from, long to, LongConsumer loaded) {
+		if(from < 0)
+			throw new NegativeIndexException();
+		to = Math.min(to,size());
+		if(to <= from)
+			return;
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(to-from, TRANSFER_CHUNK_SIZE));
+		for (long address = from; address < to; address += buffer.limit()) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), to-address));
+			innerRead(address,buffer);
+			loaded.accept(buffer.limit());
+		}
+	}
+
+	/**
+	 * Copies the raw bytes of a range into another store, without serializing anything. The markers of both stores are not changed.<br>
+	 * Stores should override this method to copy without buffering (eg. channel to channel),
+	 * the default implementation copies the data in chunks of up to {@link #TRANSFER_CHUNK_SIZE} bytes
+	 * @param from the start of the range (inclusive)
+	 * @param to the end of the range (exclusive)
+	 * @param target the store to copy the data to, must not be this store (use {@link #move(long, long, long)} instead)
+	 * @param targetAddress the address in the target store to copy the range to
+	 */
+	public void copyRange(long from, long to, DataStore target, long targetAddress) {
+		if(from < 0 || targetAddress < 0)
+			throw new NegativeIndexException();
+		if(to <= from)
+			return;
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(to-from, TRANSFER_CHUNK_SIZE));
+		for (long address = from; address < to; address += buffer.limit()) {
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), to-address));
+			innerRead(address,buffer);
+			buffer.flip();
+			target.write(targetAddress+(address-from),buffer);
+		}
+	}
+
+	/**
+	 * Copies the whole store into another store, afterwards the target has the same content and size as this store.
+	 * Collections and {@link com.niton.memory.direct.managed.VirtualMemory VirtualMemories} can be opened (read) on the target right away
+	 * @param target the store to copy the data into
+	 * @return the number of bytes copied
+	 * @see #copyRange(long, long, DataStore, long)
+	 */
+	public long transferTo(DataStore target) {
+		long sz = size();
+		copyRange(0,sz,target,0);
+		if(target.size() > sz)
+			target.cut(sz);
+		return sz;
+	}
+
+	/**
+	 * Reads a portion of the datastore without blocking the caller. The marker is not changed.<br>
+	 * Stores which can do asynchronous IO should override this method,
+	 * the default implementation reads synchronously and returns a completed future
+	 * @param from the index (inclusive) to start reading at
+	 * @param to the index (exclusive) to stop reading at
+	 * @return a future completing with the read data (position 0, limit {@code to-from})
+	 */
+	public CompletableFuture<ByteBuffer> readAsync(long from, long to) {
+		try {
+			ByteBuffer dst = ByteBuffer.allocate((int) (to-from));
+			innerRead(from,dst);
+			dst.flip();
+			return CompletableFuture.completedFuture(dst);
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Writes the remaining bytes of the buffer without blocking the caller. The marker is not changed.
+	 * The buffer must not be modified until the future completes.<br>
+	 * Stores which can do asynchronous IO should override this method,
+	 * the default implementation writes synchronously and returns a completed future
+	 * @param to the index to start writing at
+	 * @param src the data to write
+	 * @return a future completing when the data is written
+	 */
+	public CompletableFuture<Void> writeAsync(long to, ByteBuffer src) {
+		try {
+			innerWrite(to,src);
+			return CompletableFuture.completedFuture(null);
+		} catch (RuntimeException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+	}
+
+	/**
+	 * Makes sure that all data written so far survives a crash (eg. by forcing it to the disk).
+	 * Stores which are not persistent do nothing, which is the default
+	 */
+	public void sync() {
+	}
+
+	/**
+	 * Checks if the data in a range was stored correctly, eg. by comparing checksums.
+	 * Stores which are not able to detect corruption return true, which is the default
+	 * @param from the start of the range (inclusive)
+	 * @param to the end of the range (exclusive)
+	 * @return false if corrupted data was found
+	 */
+	public boolean verify(long from, long to) {
+		return true;
+	}
+
+	/**
+	 * @return false if corrupted data was found in the store
+	 * @see #verify(long, long)
+	 */
+	public boolean verify() {
+		return verify(0,size());
 	}
 
 
@@ -307,6 +545,23 @@ public abstract class DataStore {
 		return sb.toString();
 	}
 
+	/**
+	 * @return a cursor at index 0
+	 */
+	public Cursor openCursor(){
+		return new Cursor(this,0);
+	}
+
+	/**
+	 * Opens a cursor, which has its own position and streams. Multiple threads can use their own cursors on the same store at once
+	 * (as far as the store supports concurrent access)
+	 * @param position the position the cursor starts at
+	 * @return the new cursor
+	 */
+	public Cursor openCursor(long position){
+		return new Cursor(this,position);
+	}
+
 	public InputStream openReadStream(){
 		return new DataStoreInputStream();
 	}
@@ -317,14 +572,52 @@ public abstract class DataStore {
 		return new ShiftingOutputStream();
 	}
 
+	/**
+	 * The bytes from the marker to the end of the store. The stream is lazy, see {@link #bytes(long, long)}
+	 */
 	public Stream<Byte> stream(){
-		long start = getMarker();
-		byte[] data = read(start,	size());
-		jump(start);
-		Byte[] wrapped = new Byte[data.length];
-		for (int i = 0; i < data.length; i++) {
-			wrapped[i] = data[i];
-		}
-		return Arrays.stream(wrapped);
+		return bytes().mapToObj(b -> (byte) b);
+	}
+
+	/**
+	 * @return the (unsigned) bytes from the marker to the end of the store
+	 * @see #bytes(long, long)
+	 */
+	public IntStream bytes(){
+		return bytes(getMarker(), size());
+	}
+
+	/**
+	 * Streams the (unsigned) bytes of a range without loading the whole range into memory.
+	 * The bytes are read lazily in chunks of {@link #bufferSize} when the stream is consumed.
+	 * The stream can be used in parallel, it is split by address ranges
+	 * @param from the first address (inclusive)
+	 * @param to the last address (exclusive)
+	 * @return the bytes as ints from 0 to 255
+	 */
+	public IntStream bytes(long from, long to){
+		return StreamSupport.intStream(new ByteSpliterator(this, from, to, Math.max(bufferSize, 1)), false);
+	}
+
+	/**
+	 * @return chunks from the marker to the end of the store
+	 * @see #chunks(long, long, int)
+	 */
+	public Stream<ByteBuffer> chunks(int chunkSize){
+		return chunks(getMarker(), size(), chunkSize);
+	}
+
+	/**
+	 * Streams a range of the store as buffers of (at most) {@code chunkSize} bytes. Each buffer is read when it is consumed.
+	 * The stream can be used in parallel, it is split by address ranges
+	 * @param from the first address (inclusive)
+	 * @param to the last address (exclusive)
+	 * @param chunkSize the size of each buffer, only the last one may be smaller
+	 * @return the chunks in order
+	 */
+	public Stream<ByteBuffer> chunks(long from, long to, int chunkSize){
+		if(chunkSize < 1)
+			throw new IllegalArgumentException("Chunk size must be > 0");
+		return StreamSupport.stream(new ChunkSpliterator(this, from, to, chunkSize), false);
 	}
 }
@@ -0,0 +1,100 @@
+package com.niton.memory.direct;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Warms up stores after opening them by {@link DataStore#preload(long, long, java.util.function.LongConsumer) preloading} a list of ranges.<br>
+ * The ranges are loaded one after another (large sequential reads) by a shared daemon thread, the listener is informed about the progress.
+ * <pre>
+ * memory.preload(false).add(memory.get(0)).onProgress((loaded, total) -&gt; ...).start().join();
+ * </pre>
+ */
+public class Preloader {
+	private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "DataStore preloader");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final List<Range> ranges = new ArrayList<>();
+	private ProgressListener listener = (loaded, total) -> {};
+
+	/**
+	 * Adds the whole store (a {@link com.niton.memory.direct.managed.Section} only loads its used part)
+	 */
+	public Preloader add(DataStore store) {
+		return add(store, 0, store.size());
+	}
+
+	/**
+	 * Adds a range of a store
+	 */
+	public Preloader add(DataStore store, long from, long to) {
+		if(from < 0)
+			throw new NegativeIndexException();
+		if(to > from)
+			ranges.add(new Range(store, from, to));
+		return this;
+	}
+
+	public Preloader onProgress(ProgressListener listener) {
+		this.listener = listener;
+		return this;
+	}
+
+	/**
+	 * @return the number of bytes that will be loaded
+	 */
+	public long total() {
+		long total = 0;
+		for (Range range : ranges)
+			total += range.to - range.from;
+		return total;
+	}
+
+	/**
+	 * Loads the ranges in the calling thread
+	 */
+	public void run() {
+		long total = total();
+		long[] loaded = {0};
+		listener.progress(0, total);
+		for (Range range : ranges) {
+			range.store.preload(range.from, range.to, bytes -> {
+				loaded[0] += bytes;
+				listener.progress(loaded[0], total);
+			});
+		}
+	}
+
+	/**
+	 * Loads the ranges in the background
+	 * @return a future completing when all ranges are loaded
+	 */
+	public CompletableFuture<Void> start() {
+		return CompletableFuture.runAsync(this::run, LOADER);
+	}
+
+	@FunctionalInterface
+	public interface ProgressListener {
+		/**
+		 * @param loaded the number of bytes loaded so far
+		 * @param total the number of bytes to load (ranges reaching behind the end of their store are loaded only up to the end)
+		 */
+		void progress(long loaded, long total);
+	}
+
+	private static class Range {
+		private final DataStore store;
+		private final long from, to;
+
+		private Range(DataStore store, long from, long to) {
+			this.store = store;
+			this.from = from;
+			this.to = to;
+		}
+	}
+}
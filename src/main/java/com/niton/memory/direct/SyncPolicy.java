@@ -0,0 +1,107 @@
+package com.niton.memory.direct;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a persistent DataStore {@link DataStore#sync() syncs} its data to the disk.<br>
+ * The store reports every change to its policy, the policy then syncs the store immediately, in the background or not at all.
+ * Periodic syncs are done by one shared daemon thread.<br>
+ * Policies (except {@link #none()} and {@link #perOperation()}) keep track of the changes, so every store needs its own instance.
+ */
+public abstract class SyncPolicy {
+	private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "DataStore flusher");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final SyncPolicy NONE = new SyncPolicy() {
+		@Override
+		public void changed(DataStore store, long bytes) {
+		}
+	};
+	private static final SyncPolicy PER_OPERATION = new SyncPolicy() {
+		@Override
+		public void changed(DataStore store, long bytes) {
+			store.sync();
+		}
+	};
+
+	/**
+	 * Never syncs, the operating system decides when the data is written to the disk
+	 */
+	public static SyncPolicy none() {
+		return NONE;
+	}
+
+	/**
+	 * Syncs after every change, this is the safest and slowest policy
+	 */
+	public static SyncPolicy perOperation() {
+		return PER_OPERATION;
+	}
+
+	/**
+	 * Syncs in the background at most {@code millis} milliseconds after a change
+	 */
+	public static SyncPolicy everyMillis(long millis) {
+		if (millis < 1)
+			throw new IllegalArgumentException("Interval must be > 0");
+		return new SyncPolicy() {
+			private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+			@Override
+			public void changed(DataStore store, long bytes) {
+				if (scheduled.compareAndSet(false, true)) {
+					FLUSHER.schedule(() -> {
+						scheduled.set(false);
+						store.sync();
+					}, millis, TimeUnit.MILLISECONDS);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Syncs in the background as soon as {@code bytes} bytes were changed since the last sync
+	 */
+	public static SyncPolicy everyBytes(long bytes) {
+		if (bytes < 1)
+			throw new IllegalArgumentException("Byte count must be > 0");
+		return new SyncPolicy() {
+			private final AtomicLong changed = new AtomicLong(0);
+
+			@Override
+			public void changed(DataStore store, long count) {
+				long before = changed.getAndAdd(count);
+				if (before < bytes && before + count >= bytes)
+					flush(store, before + count);
+			}
+
+			/**
+			 * @param observed the number of changed bytes which triggered the sync
+			 */
+			private void flush(DataStore store, long observed) {
+				FLUSHER.execute(() -> {
+					//bytes changed after the trigger are counted for the next sync
+					long left = changed.addAndGet(-observed);
+					store.sync();
+					//no change can trigger a sync while the count stays above the threshold
+					if (left >= bytes)
+						flush(store, left);
+				});
+			}
+		};
+	}
+
+	/**
+	 * Called by the store after it was changed
+	 *
+	 * @param store the changed store
+	 * @param bytes the number of changed bytes
+	 */
+	public abstract void changed(DataStore store, long bytes);
+}
@@ -0,0 +1,47 @@
+package com.niton.memory.direct.managed;
+
+/**
+ * Decides how a {@link VirtualMemory} lays out its sections and what happens when a section grows.<br>
+ * A memory has to be read with the same mode it was created with.
+ */
+public enum AllocationMode {
+	/**
+	 * The sections are stored back to back. A growing section shifts all the data behind it,
+	 * so growth costs O(store size), but no space is wasted. Index entries are 3 words (block size, size, end address)
+	 */
+	SHIFTING(3),
+	/**
+	 * The sections are stored back to back like {@link #SHIFTING}, but the index stores the capacity of each section
+	 * instead of its end address. The start addresses are calculated from a tree of the capacities which is built when
+	 * the index is read, so a growing section only writes its own capacity instead of the addresses of all following sections.
+	 * Index entries are 3 words (block size, size, capacity)
+	 */
+	RELATIVE(3),
+	/**
+	 * Each section has its own start address. A growing section takes the free space behind it or is moved to a free extent
+	 * (or the end of the store) and its old space is reused, so growth costs O(section size).
+	 * The free extents are the gaps between the extents in the index, so they are persisted with the index.
+	 * Index entries are 4 words (block size, size, start address, end address)
+	 */
+	RELOCATING(4),
+	/**
+	 * Each section is a chain of extents which do not have to be next to each other (see {@link ChainedSection}).
+	 * A growing section appends a new extent, so growth is O(1) amortized no matter where the section is.
+	 * New extents reuse the space of deleted sections or are placed at the end of the store. The memory can not be compacted.
+	 * Index entries are 4 words (block size, size, first extent, last extent)
+	 */
+	CHAINED(4);
+
+	private final int indexWords;
+
+	AllocationMode(int indexWords) {
+		this.indexWords = indexWords;
+	}
+
+	/**
+	 * @return the number of words of each entry in the index
+	 */
+	int getIndexWords() {
+		return indexWords;
+	}
+}
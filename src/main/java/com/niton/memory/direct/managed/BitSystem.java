@@ -1,10 +1,9 @@
 package com.niton.memory.direct.managed;
 
-import com.niton.StorageException;
 import com.niton.memory.direct.DataStore;
 
 import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Defines how big the addresses used are
@@ -24,29 +23,87 @@ public enum BitSystem {
 	}
 
 
+	/**
+	 * @deprecated the stream is not used anymore, use {@link #write(long, long, DataStore)}
+	 */
+	@Deprecated
 	public void write(long address, long i, DataStore store,DataOutputStream dos) {
-		store.jump(address);
-		try {
-			switch (this){
-				case X8:
-					dos.writeByte((int) i);
-					break;
-				case X16:
-					dos.writeShort((int) i);
-					break;
-				case X32:
-					dos.writeInt((int) i);
-					break;
-				case X64:
-					dos.writeLong(i);
-					break;
-			}
-		} catch (IOException e) {
-			throw new StorageException(e);
-		}
+		write(address,i,store);
 	}
+	/**
+	 * Writes a word and moves the marker of the store behind it, so consecutive words can be written at {@link DataStore#getMarker()}
+	 * @see DataStore#writeWord(long, long, BitSystem)
+	 */
 	public void write(long address, long i, DataStore store) {
-		DataOutputStream dos = new DataOutputStream(store.openWritingStream());
-		write(address,i,store,dos);
+		store.writeWord(address,i,this);
+		store.jump(address+base);
+	}
+
+	/**
+	 * Reads a (signed, big endian) word of this width
+	 * @param buffer the buffer to read from
+	 * @param index the absolute index in the buffer
+	 */
+	public long get(ByteBuffer buffer, int index) {
+		switch (this){
+			case X8:
+				return buffer.get(index);
+			case X16:
+				return buffer.getShort(index);
+			case X32:
+				return buffer.getInt(index);
+			case X64:
+				return buffer.getLong(index);
+			default:
+				throw new IllegalStateException("Unexpected value: " + this);
+		}
+	}
+
+	/**
+	 * Writes a (big endian) word of this width
+	 * @param buffer the buffer to write into
+	 * @param index the absolute index in the buffer
+	 * @param value the value to write, only the lower bytes are used
+	 */
+	public void put(ByteBuffer buffer, int index, long value) {
+		switch (this){
+			case X8:
+				buffer.put(index,(byte) value);
+				break;
+			case X16:
+				buffer.putShort(index,(short) value);
+				break;
+			case X32:
+				buffer.putInt(index,(int) value);
+				break;
+			case X64:
+				buffer.putLong(index,value);
+				break;
+		}
+	}
+
+	/**
+	 * Reads a (signed, big endian) word of this width
+	 * @param data the array to read from
+	 * @param index the index of the first byte
+	 */
+	public long get(byte[] data, int index) {
+		long value = data[index];
+		for (int i = 1; i < base; i++) {
+			value = (value << 8) | (data[index+i] & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * Writes a (big endian) word of this width
+	 * @param data the array to write into
+	 * @param index the index of the first byte
+	 * @param value the value to write, only the lower bytes are used
+	 */
+	public void put(byte[] data, int index, long value) {
+		for (int i = 0; i < base; i++) {
+			data[index+i] = (byte) (value >>> (8*(base-1-i)));
+		}
 	}
 }
@@ -0,0 +1,384 @@
+package com.niton.memory.direct.managed;
+
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
+
+/**
+ * A section made of multiple extents which do not have to be next to each other (used by {@link AllocationMode#CHAINED}).<br>
+ * Each extent starts with a header of two words (the length of the extent and the address of the next extent, 0 for the last one),
+ * followed by its data. The section header points to the first and the last extent instead of the start and end of the section.
+ * The extents are read into an in memory table when the section is opened, so addresses are translated without any IO.<br>
+ * Growing the section appends a new extent (at the end of the store or where its {@link ExtentSource} places it) and links it,
+ * existing data is never moved.
+ */
+public class ChainedSection extends Section {
+	private final DataStore store;
+	/**
+	 * The address of the first data byte of each extent
+	 */
+	private long[] addresses = new long[4];
+	/**
+	 * The section address of the first byte of each extent
+	 */
+	private long[] offsets = new long[4];
+	private int extents;
+	private long capacity;
+	private long lastExtent;
+	private ExtentSource extentSource;
+
+	ChainedSection(DataStore store, long blockSizePointer, long endMarkPointer, long firstExtentPointer, long lastExtentPointer, BitSystem system) {
+		super(store, blockSizePointer, endMarkPointer, firstExtentPointer, lastExtentPointer, system);
+		this.store = store;
+		loadExtents();
+	}
+
+	/**
+	 * Creates a section whose header was already read, only the extents are read
+	 */
+	ChainedSection(DataStore store, long[] pointers, long[] header, BitSystem system) {
+		super(store, pointers, header, system);
+		this.store = store;
+		loadExtents();
+	}
+
+	private int getExtentHeaderSize() {
+		return 2 * getBit().getBase();
+	}
+
+	/**
+	 * @param extentSource provides the space for new extents, without one extents are appended at the end of the store
+	 */
+	void setExtentSource(ExtentSource extentSource) {
+		this.extentSource = extentSource;
+	}
+
+	private void loadExtents() {
+		extents = 0;
+		capacity = 0;
+		lastExtent = 0;
+		long extent = store.readWord(getStartAddressPointer(), getBit());
+		while (extent != 0) {
+			addExtent(extent, store.readWord(extent, getBit()));
+			extent = store.readWord(extent + getBit().getBase(), getBit());
+		}
+	}
+
+	private void addExtent(long extent, long length) {
+		if (extents == addresses.length) {
+			addresses = Arrays.copyOf(addresses, extents * 2);
+			offsets = Arrays.copyOf(offsets, extents * 2);
+		}
+		addresses[extents] = extent + getExtentHeaderSize();
+		offsets[extents] = capacity;
+		extents++;
+		capacity += length;
+		lastExtent = extent;
+	}
+
+	/**
+	 * Sets up an empty section with its first extent
+	 * @param startAddress ignored, the extent is placed at the end of the store
+	 */
+	@Override
+	public void init(long blockSize, long initialBLocks, long startAddress) {
+		store.writeWord(getStartAddressPointer(), 0, getBit());
+		store.writeWord(getEndAddressPointer(), 0, getBit());
+		setEndMarker(0);
+		setBlockSize(blockSize);
+		loadExtents();
+		if (blockSize * initialBLocks > 0)
+			appendExtent(blockSize * initialBLocks);
+		jump(0);
+	}
+
+	@Override
+	public void refreshCaches() {
+		super.refreshCaches();
+		loadExtents();
+	}
+
+	/**
+	 * Appends an extent to the section, taken from the {@link ExtentSource} or the end of the store
+	 */
+	private void appendExtent(long length) {
+		long extent = extentSource == null ? store.size() : extentSource.allocate(getExtentHeaderSize() + length);
+		long end = extent + getExtentHeaderSize() + length;
+		//reserves the space of the extent, so the next extent is placed behind it
+		store.write(new byte[1], end - 1, end);
+		store.writeWord(extent, length, getBit());
+		store.writeWord(extent + getBit().getBase(), 0, getBit());
+		if (extents == 0)
+			store.writeWord(getStartAddressPointer(), extent, getBit());
+		else
+			store.writeWord(lastExtent + getBit().getBase(), extent, getBit());
+		store.writeWord(getEndAddressPointer(), extent, getBit());
+		addExtent(extent, length);
+	}
+
+	/**
+	 * Grows the section until {@code end} bytes fit into it. The section at least doubles so the number of extents stays small
+	 */
+	private void ensureCapacity(long end) {
+		if (end <= capacity)
+			return;
+		long length = Math.max(end - capacity, capacity);
+		long blockSize = getBlockSize();
+		if (blockSize > 0)
+			length = (length + blockSize - 1) / blockSize * blockSize;
+		appendExtent(length);
+	}
+
+	@Override
+	public void addBlock() {
+		appendExtent(Math.max(getBlockSize(), 1));
+	}
+
+	@Override
+	public void enlarge(long mvSize) {
+		if (mvSize > 0)
+			appendExtent(mvSize);
+	}
+
+	@Override
+	public long capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the address of the first data byte, or 0 if the section has no extent
+	 */
+	@Override
+	public long getStartAddress() {
+		return extents == 0 ? 0 : addresses[0];
+	}
+
+	/**
+	 * @return the end of the last extent, or 0 if the section has no extent
+	 */
+	@Override
+	public long getEndAddress() {
+		return extents == 0 ? 0 : addresses[extents - 1] + capacity - offsets[extents - 1];
+	}
+
+	/**
+	 * @return the number of extents the section is made of
+	 */
+	public int getExtentCount() {
+		return extents;
+	}
+
+	/**
+	 * Calls the action with the start and end of each extent, including the extent headers
+	 */
+	void forEachExtent(ExtentAction action) {
+		for (int i = 0; i < extents; i++)
+			action.accept(addresses[i] - getExtentHeaderSize(), addresses[i] + extentEnd(i) - offsets[i]);
+	}
+
+	/**
+	 * Calls the action with the start and end of each extent of a chain, without creating a section
+	 * @param extent the address of the first extent, 0 for none
+	 */
+	static void forEachExtent(DataStore store, long extent, BitSystem bits, ExtentAction action) {
+		while (extent != 0) {
+			action.accept(extent, extent + 2L * bits.getBase() + store.readWord(extent, bits));
+			extent = store.readWord(extent + bits.getBase(), bits);
+		}
+	}
+
+	private int extentOf(long address) {
+		int i = Arrays.binarySearch(offsets, 0, extents, address);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	private long extentEnd(int extent) {
+		return extent + 1 < extents ? offsets[extent + 1] : capacity;
+	}
+
+	@Override
+	public long resolveAddress(long innerAddress) {
+		if (innerAddress < 0 || innerAddress >= capacity)
+			throw new SegmentationFault("Address outside the section (capacity: " + capacity + ") ADDRESS: " + innerAddress);
+		int extent = extentOf(innerAddress);
+		return addresses[extent] + innerAddress - offsets[extent];
+	}
+
+	/**
+	 * @return true if the range does not span multiple extents, so it can be accessed with a single store operation
+	 */
+	private boolean isContiguous(long from, long to) {
+		return to <= from || extentEnd(extentOf(from)) >= to;
+	}
+
+	private void checkRange(long from, long to, String operation) {
+		if (from < 0 || to > capacity)
+			throw new SegmentationFault(operation + " outside the section (capacity: " + capacity + ") " + operation.toUpperCase() + ": " + from + " - " + to);
+	}
+
+	/**
+	 * Calls the action for each part of the range which lies in a single extent
+	 */
+	private void forEachPart(long from, long to, PartAction action) {
+		long position = from;
+		int extent = extentOf(from);
+		while (position < to) {
+			long partEnd = Math.min(to, extentEnd(extent));
+			action.accept(addresses[extent] + position - offsets[extent], position - from, partEnd - position);
+			position = partEnd;
+			extent++;
+		}
+	}
+
+	@Override
+	protected void innerRead(long from, ByteBuffer dst) {
+		long to = from + dst.remaining();
+		checkRange(from, to, "Read");
+		int limit = dst.limit();
+		int position = dst.position();
+		forEachPart(from, to, (address, offset, length) -> {
+			dst.limit((int) (position + offset + length));
+			store.read(address, dst);
+		});
+		dst.limit(limit);
+	}
+
+	@Override
+	protected void innerWrite(long from, ByteBuffer src) {
+		long to = from + src.remaining();
+		if (from < 0)
+			throw new NegativeIndexException();
+		ensureCapacity(to);
+		int limit = src.limit();
+		int position = src.position();
+		forEachPart(from, to, (address, offset, length) -> {
+			src.limit((int) (position + offset + length));
+			store.write(address, src);
+		});
+		src.limit(limit);
+		setEndMarker(Math.max(to, size()));
+	}
+
+	@Override
+	public CompletableFuture<ByteBuffer> readAsync(long from, long to) {
+		if (from < 0 || to > capacity)
+			return CompletableFuture.failedFuture(new SegmentationFault("Read outside the section (capacity: " + capacity + ") READ: " + from + " - " + to));
+		if (to > from && isContiguous(from, to))
+			return store.readAsync(resolveAddress(from), resolveAddress(from) + to - from);
+		ByteBuffer dst = ByteBuffer.allocate((int) (to - from));
+		innerRead(from, dst);
+		dst.flip();
+		return CompletableFuture.completedFuture(dst);
+	}
+
+	@Override
+	public CompletableFuture<Void> writeAsync(long from, ByteBuffer src) {
+		long to = from + src.remaining();
+		if (from < 0)
+			return CompletableFuture.failedFuture(new NegativeIndexException());
+		ensureCapacity(to);
+		if (to > from && isContiguous(from, to)) {
+			setEndMarker(Math.max(to, size()));
+			return store.writeAsync(resolveAddress(from), src);
+		}
+		innerWrite(from, src);
+		return CompletableFuture.completedFuture(null);
+	}
+
+	@Override
+	public long readWord(long address, BitSystem bits) {
+		long to = address + bits.getBase();
+		checkRange(address, to, "Read");
+		if (isContiguous(address, to))
+			return store.readWord(resolveAddress(address), bits);
+		ByteBuffer word = ByteBuffer.allocate(bits.getBase());
+		innerRead(address, word);
+		return bits.get(word, 0);
+	}
+
+	@Override
+	public void writeWord(long address, long value, BitSystem bits) {
+		long to = address + bits.getBase();
+		if (address < 0)
+			throw new NegativeIndexException();
+		ensureCapacity(to);
+		if (isContiguous(address, to)) {
+			store.writeWord(resolveAddress(address), value, bits);
+			setEndMarker(Math.max(to, size()));
+			return;
+		}
+		ByteBuffer word = ByteBuffer.allocate(bits.getBase());
+		bits.put(word, 0, value);
+		innerWrite(address, word);
+	}
+
+	@Override
+	public void move(long from, long to, long length) {
+		if (length <= 0 || from == to)
+			return;
+		if (from < 0 || to < 0 || from + length > capacity)
+			throw new SegmentationFault("Move outside the section (capacity: " + capacity + ") FROM: " + from + " TO: " + to + " LENGTH: " + length);
+		ensureCapacity(to + length);
+		if (isContiguous(from, from + length) && isContiguous(to, to + length)) {
+			store.move(resolveAddress(from), resolveAddress(to), length);
+			setEndMarker(Math.max(to + length, size()));
+		} else {
+			moveBuffered(from, to, length);
+		}
+	}
+
+	@Override
+	public void preload(long from, long to, LongConsumer loaded) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		to = Math.min(to, size());
+		if (to <= from)
+			return;
+		forEachPart(from, to, (address, offset, length) -> store.preload(address, address + length, loaded));
+	}
+
+	@Override
+	public void copyRange(long from, long to, DataStore target, long targetAddress) {
+		checkRange(from, to, "Copy");
+		forEachPart(from, to, (address, offset, length) -> store.copyRange(address, address + length, target, targetAddress + offset));
+	}
+
+	@Override
+	public boolean verify(long from, long to) {
+		checkRange(from, to, "Verify");
+		boolean[] valid = {true};
+		forEachPart(from, to, (address, offset, length) -> valid[0] &= store.verify(address, address + length));
+		return valid[0];
+	}
+
+	@FunctionalInterface
+	interface ExtentSource {
+		/**
+		 * @return the address of {@code length} free bytes which are zero
+		 */
+		long allocate(long length);
+	}
+
+	@FunctionalInterface
+	interface ExtentAction {
+		/**
+		 * @param start the address of the extent header
+		 * @param end the end of the extent data
+		 */
+		void accept(long start, long end);
+	}
+
+	@FunctionalInterface
+	private interface PartAction {
+		/**
+		 * @param address the address of the part in the store
+		 * @param offset the offset of the part from the start of the range
+		 * @param length the length of the part
+		 */
+		void accept(long address, long offset, long length);
+	}
+}
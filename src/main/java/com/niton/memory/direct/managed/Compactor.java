@@ -0,0 +1,82 @@
+package com.niton.memory.direct.managed;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gives the unused capacity of a {@link VirtualMemory} (deleted or cut sections, unused blocks) back.<br>
+ * The sections are moved together in the order of their addresses, one section per {@link #step()}, so a step only
+ * moves the used bytes of one section and writes two addresses. The last step cuts the store behind the last section.
+ * After each step the memory is consistent, so the compactor can be paused and resumed at any time.<br>
+ * Sections and collections do not lock the memory, so the compactor has to run on the thread using the memory,
+ * a {@link #run(long, TimeUnit) time slice} at a time between other operations.
+ * <pre>
+ * Compactor compactor = memory.compactor();
+ * while (!compactor.run(10, TimeUnit.MILLISECONDS))
+ * 	doOtherWork();
+ * </pre>
+ */
+public class Compactor {
+	private final VirtualMemory memory;
+	private List<Section> sections;
+	private int version;
+	/**
+	 * The position of the next section to move in {@link #sections}
+	 */
+	private int next;
+	private boolean done;
+
+	Compactor(VirtualMemory memory) {
+		this.memory = memory;
+		restart();
+	}
+
+	private void restart() {
+		sections = memory.sectionsByAddress();
+		version = memory.getStructureVersion();
+		next = 0;
+		done = false;
+	}
+
+	/**
+	 * Moves the next section behind the previous one or cuts the store if all sections are moved.
+	 * If sections were created, deleted or relocated since the last step the compactor starts over,
+	 * sections which are already in place are not moved again
+	 * @return true if there is more work to do
+	 */
+	public boolean step() {
+		if (version != memory.getStructureVersion())
+			restart();
+		if (done)
+			return false;
+		if (next < sections.size()) {
+			Section previous = next == 0 ? memory.getIndex() : sections.get(next - 1);
+			memory.compactBehind(previous, sections.get(next++));
+			return true;
+		}
+		memory.compactEnd(sections.isEmpty() ? memory.getIndex() : sections.get(sections.size() - 1));
+		done = true;
+		return false;
+	}
+
+	/**
+	 * Runs steps until the compaction is done or the time is up. At least one step is done
+	 * @return true if the compaction is done
+	 */
+	public boolean run(long time, TimeUnit unit) {
+		long start = System.nanoTime();
+		long budget = unit.toNanos(time);
+		do {
+			if (!step())
+				return true;
+		} while (System.nanoTime() - start < budget);
+		return false;
+	}
+
+	/**
+	 * @return true if all sections are moved together and the store is cut
+	 */
+	public boolean isDone() {
+		return done && version == memory.getStructureVersion();
+	}
+}
@@ -1,11 +1,12 @@
 package com.niton.memory.direct.managed;
 
 import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongConsumer;
 
 public class Section extends DataStore {
 	public BitSystem getBit() {
@@ -34,9 +35,8 @@ public class Section extends DataStore {
 	private long startAddressPointer;
 	private long endAddressPointer;
 	private Section followUp = null;
+	private Allocator allocator;
 	public byte shiftFlag = SHIFT_START_AND_END;
-	private DataInputStream dis;
-	private DataOutputStream dos;
 	private transient long startAddress,endAddress,endMark,blockSize;
 	//blockSize,usedSize,startAddress,endAddress
 	public Section(int configAddress, DataStore store,BitSystem system) {
@@ -59,14 +59,27 @@ public class Section extends DataStore {
 	public Section(DataStore store, long blockSizePointer, long endMarkPointer, long startAddressPointer, long endAddressPointer, BitSystem system) {
 		this.bit = system;
 		this.store = store;
-		dis = new DataInputStream(store.new DataStoreInputStream());
-		dos = new DataOutputStream(store.new DataStoreOutputStream());
 		setBlockSizePointer(blockSizePointer);
 		setEndMarkPointer(endMarkPointer);
 		setStartAddressPointer(startAddressPointer);
 		setEndAddressPointer(endAddressPointer);
 	}
 
+	/**
+	 * Creates a section whose header was already read (eg. together with the rest of the index), nothing is read
+	 * @param pointers the addresses of the block size, size, start and end words
+	 * @param header the block size, size, start and end address
+	 */
+	Section(DataStore store, long[] pointers, long[] header, BitSystem system) {
+		this.bit = system;
+		this.store = store;
+		moveHeader(pointers[0],pointers[1],pointers[2],pointers[3]);
+		blockSize = header[0];
+		endMark = header[1];
+		startAddress = header[2];
+		endAddress = header[3];
+	}
+
 	public long getBlockSizePointer() {
 		return blockSizePointer;
 	}
@@ -119,7 +132,7 @@ public class Section extends DataStore {
 
 	private void setStartAddress(long startAddress) {
 		this.startAddress = startAddress;
-		bit.write(startAddressPointer, startAddress,store,dos);
+		bit.write(startAddressPointer, startAddress,store);
 	}
 
 	public long getBlockSize(){
@@ -133,66 +146,184 @@ public class Section extends DataStore {
 	}
 
 	private long readFromAddress(long address) {
-		store.jump(address);
-		try {
-			switch (bit){
-				case X8:
-					return dis.readByte();
-				case X16:
-					return dis.readShort();
-				case X32:
-					return dis.readInt();
-				case X64:
-					return dis.readLong();
-				default:
-					throw new IllegalStateException("Unexpected value: " + bit);
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return -1;
+		return store.readWord(address,bit);
+	}
+
+	/**
+	 * Addresses are relative to the start of the section, so the range has to lie within the capacity
+	 */
+	private void checkRange(long from, long to, String operation) {
+		if(from < 0 || to > capacity())
+			throw new SegmentationFault(operation+" outside the section (Sect: "+getStartAddress()+" - "+getEndAddress()+") "+operation.toUpperCase()+": "+from+" - "+to);
 	}
 
 	@Override
 	protected byte[] innerRead(long from, long to) {
-		if(from < 0 || to > getEndAddress())
-			throw new SegmentationFault("Read outside the section (Sect: "+getStartAddress()+" - "+getEndAddress()+") READ: "+from+" - "+to);
+		byte[] res = new byte[(int) (to-from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected void innerRead(long from, ByteBuffer dst) {
+		long to = from+dst.remaining();
+		checkRange(from,to,"Read");
 		long start = getStartAddress();
-		jump(to);
-		return store.read(start+from,start+to);
+		store.read(start+from,dst);
 	}
 
 	@Override
 	protected void innerWrite(byte[] data, long from, long to) {
-		while(to> capacity())
-			addBlock();
+		innerWrite(from, ByteBuffer.wrap(data,0,(int)(to-from)));
+	}
+
+	@Override
+	protected void innerWrite(long from, ByteBuffer src) {
+		long to = from+src.remaining();
+		ensureCapacity(to);
 		long strt= getStartAddress();
-		store.write(data,from+strt,to+strt);
+		store.write(from+strt,src);
 		setEndMarker((int)Math.max(to, size()));
-		jump(to);
 	}
 
+	@Override
+	public CompletableFuture<ByteBuffer> readAsync(long from, long to) {
+		try {
+			checkRange(from,to,"Read");
+		} catch (SegmentationFault e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		long start = getStartAddress();
+		return store.readAsync(start+from,start+to);
+	}
+
+	/**
+	 * The section is enlarged before the write is started, so only the data itself is written asynchronously
+	 */
+	@Override
+	public CompletableFuture<Void> writeAsync(long from, ByteBuffer src) {
+		long to = from+src.remaining();
+		ensureCapacity(to);
+		long strt= getStartAddress();
+		setEndMarker(Math.max(to, size()));
+		return store.writeAsync(from+strt,src);
+	}
+
+	@Override
+	public long readWord(long address, BitSystem bits) {
+		long to = address+bits.getBase();
+		checkRange(address,to,"Read");
+		return store.readWord(getStartAddress()+address,bits);
+	}
+
+	@Override
+	public void writeWord(long address, long value, BitSystem bits) {
+		long to = address+bits.getBase();
+		ensureCapacity(to);
+		store.writeWord(getStartAddress()+address,value,bits);
+		setEndMarker(Math.max(to, size()));
+	}
+
+	@Override
+	public void move(long from, long to, long length) {
+		if(length <= 0 || from == to)
+			return;
+		if(to < 0)
+			throw new SegmentationFault("Move outside the section (capacity: "+capacity()+") TO: "+to);
+		checkRange(from,from+length,"Move");
+		ensureCapacity(to+length);
+		long start = getStartAddress();
+		store.move(start+from,start+to,length);
+		setEndMarker(Math.max(to+length, size()));
+	}
+
+	@Override
+	public void sync() {
+		store.sync();
+	}
+
+	@Override
+	public void preload(long from, long to, LongConsumer loaded) {
+		if(from < 0)
+			throw new NegativeIndexException();
+		to = Math.min(to,size());
+		if(to <= from)
+			return;
+		long start = getStartAddress();
+		store.preload(start+from,start+to,loaded);
+	}
+
+	@Override
+	public void copyRange(long from, long to, DataStore target, long targetAddress) {
+		checkRange(from,to,"Copy");
+		long start = getStartAddress();
+		store.copyRange(start+from,start+to,target,targetAddress);
+	}
+
+	@Override
+	public boolean verify(long from, long to) {
+		checkRange(from,to,"Verify");
+		long start = getStartAddress();
+		return store.verify(start+from,start+to);
+	}
 
 	/**
 	 * Shifts the section itself towards index 0
+	 * @deprecated only works for sections which lie directly behind each other ({@link AllocationMode#SHIFTING}),
+	 * a {@link VirtualMemory} shifts its sections itself
 	 */
+	@Deprecated
 	public void shiftBack(long amount) {
-		long oldStart = getStartAddress();
-		shiftNextSection(-amount);
-		setStartAddress(getStartAddress()-amount);
-		setEndAddress(getEndAddress()-amount);
-		store.jump(oldStart);
-		store.shiftAll(-amount);
+		shiftSection(-amount);
 	}
+
+	/**
+	 * Shifts the section itself away from index 0
+	 * @deprecated only works for sections which lie directly behind each other ({@link AllocationMode#SHIFTING}),
+	 * a {@link VirtualMemory} shifts its sections itself
+	 */
+	@Deprecated
 	public void shiftForward(long amount) {
+		shiftSection(amount);
+	}
+
+	/**
+	 * Shifts the section, its data and the sections linked behind it
+	 * @param amount the distance to shift, negative values shift towards index 0
+	 */
+	void shiftSection(long amount) {
 		long oldStart = getStartAddress();
-		shiftNextSection(amount);
+		//the own end is moved first, the next section reads its start from it
 		setStartAddress(getStartAddress()+amount);
 		setEndAddress(getEndAddress()+amount);
+		shiftNextSection(amount);
 		store.jump(oldStart);
 		store.shiftAll(amount);
 	}
+
+	/**
+	 * Grows the section (by whole blocks) until {@code end} bytes fit into it
+	 */
+	private void ensureCapacity(long end) {
+		if(end <= capacity())
+			return;
+		if(allocator == null) {
+			while(end > capacity())
+				addBlock();
+			return;
+		}
+		long missing = end-capacity();
+		long blcSz = getBlockSize();
+		if(blcSz > 0)
+			missing = (missing+blcSz-1)/blcSz*blcSz;
+		allocator.grow(this,capacity()+missing);
+	}
+
 	public void addBlock() {
+		if(allocator != null) {
+			allocator.grow(this,capacity()+getBlockSize());
+			return;
+		}
 		long origEnd = getEndAddress();
 		long blcSz = getBlockSize();
 		store.jump(origEnd);
@@ -229,11 +360,38 @@ public class Section extends DataStore {
 		this.followUp = sect;
 	}
 
+	/**
+	 * Lets the allocator decide where the section grows to, instead of shifting all data behind the section
+	 */
+	void setAllocator(Allocator allocator) {
+		this.allocator = allocator;
+	}
+
+	/**
+	 * Points the section to another header holding the same values (eg. after the index entries were moved), nothing is read
+	 */
+	void moveHeader(long blockSizePointer, long endMarkPointer, long startAddressPointer, long endAddressPointer) {
+		this.blockSizePointer = blockSizePointer;
+		this.endMarkPointer = endMarkPointer;
+		this.startAddressPointer = startAddressPointer;
+		this.endAddressPointer = endAddressPointer;
+	}
+
+	/**
+	 * Changes the range of the section without moving any data
+	 */
+	void relocate(long startAddress, long endAddress) {
+		setStartAddress(startAddress);
+		setEndAddress(endAddress);
+	}
+
 	@Override
 	public long cut(long from) {
 		if(from > size())
 			throw new IllegalArgumentException("You cannot cut outside the data size (cut-point:"+from+", actual size:"+size());
 		long ret = capacity()-from;
+		//the capacity is kept, the cut bytes have to read as 0 when the section grows again
+		clear(from,size());
 		setEndMarker(from);
 		jump(from);
 		return  ret;
@@ -243,7 +401,7 @@ public class Section extends DataStore {
 		return getEndAddress()- getStartAddress();
 	}
 	public void setEndAddress(long endAddress) {
-		bit.write(endAddressPointer, endAddress,store,dos);
+		bit.write(endAddressPointer, endAddress,store);
 		this.endAddress = endAddress;
 	}
 
@@ -265,6 +423,10 @@ public class Section extends DataStore {
 	}
 
 	public void enlarge(long mvSize) {
+		if(allocator != null) {
+			allocator.grow(this,capacity()+mvSize);
+			return;
+		}
 		long origEnd = getEndAddress();
 		store.jump(origEnd);
 		store.shiftAll(mvSize);
@@ -273,12 +435,12 @@ public class Section extends DataStore {
 	}
 
 	public void setEndMarker(long endMarker) {
-		bit.write(endMarkPointer, endMarker,store,dos);
+		bit.write(endMarkPointer, endMarker,store);
 		this.endMark = endMarker;
 	}
 
 	public void setBlockSize(long i) {
-		bit.write(blockSizePointer, i,store,dos);
+		bit.write(blockSizePointer, i,store);
 		this.blockSize = i;
 	}
 
@@ -289,6 +451,16 @@ public class Section extends DataStore {
 		setBlockSizePointer(blockSizePointer);
 	}
 
+	/**
+	 * Provides the space for growing sections
+	 */
+	interface Allocator {
+		/**
+		 * Makes the section at least {@code capacity} bytes big, moving it if needed
+		 */
+		void grow(Section section, long capacity);
+	}
+
 	public static class SegmentationFault extends RuntimeException {
 		public SegmentationFault(String message) {
 			super(message);
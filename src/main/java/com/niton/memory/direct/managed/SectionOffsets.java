@@ -0,0 +1,107 @@
+package com.niton.memory.direct.managed;
+
+import java.util.Arrays;
+
+/**
+ * A Fenwick tree over the capacities of the sections of a {@link AllocationMode#RELATIVE} memory.<br>
+ * The offset of a section (the sum of the capacities before it) and changing the capacity of a section both cost O(log n),
+ * so growing a section does not touch the headers of the following sections.
+ * The capacities are kept as well, so inserting or removing a section rebuilds the tree in memory without reading the index.
+ */
+final class SectionOffsets {
+	/**
+	 * 1-based, {@code tree[i]} holds the sum of the capacities from {@code i - lowestOneBit(i)} to {@code i - 1}
+	 */
+	private long[] tree = new long[16];
+	/**
+	 * 0-based, the capacity of each section
+	 */
+	private long[] capacities = new long[16];
+	private int size;
+
+	void clear() {
+		Arrays.fill(tree, 0, Math.min(tree.length, size + 1), 0);
+		size = 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void ensureSpace() {
+		if (size + 1 == tree.length) {
+			tree = Arrays.copyOf(tree, tree.length * 2);
+			capacities = Arrays.copyOf(capacities, tree.length);
+		}
+	}
+
+	/**
+	 * Adds a section behind the last one
+	 */
+	void append(long capacity) {
+		ensureSpace();
+		int node = size + 1;
+		capacities[size] = capacity;
+		tree[node] = capacity + offset(size) - offset(node - Integer.lowestOneBit(node));
+		size++;
+	}
+
+	/**
+	 * Adds a section at a position, the sections from the position on move one position further. Costs O(n) without IO
+	 */
+	void insert(int position, long capacity) {
+		ensureSpace();
+		System.arraycopy(capacities, position, capacities, position + 1, size - position);
+		capacities[position] = capacity;
+		size++;
+		build();
+	}
+
+	/**
+	 * Removes the section at a position, the sections behind it move one position back. Costs O(n) without IO
+	 */
+	void remove(int position) {
+		System.arraycopy(capacities, position + 1, capacities, position, size - position - 1);
+		size--;
+		build();
+	}
+
+	/**
+	 * Builds the tree from the capacities in O(n)
+	 */
+	private void build() {
+		Arrays.fill(tree, 0, size + 1, 0);
+		for (int node = 1; node <= size; node++) {
+			tree[node] += capacities[node - 1];
+			int parent = node + Integer.lowestOneBit(node);
+			if (parent <= size)
+				tree[parent] += tree[node];
+		}
+	}
+
+	/**
+	 * Changes the capacity of a section
+	 */
+	void add(int position, long delta) {
+		capacities[position] += delta;
+		for (int node = position + 1; node <= size; node += Integer.lowestOneBit(node))
+			tree[node] += delta;
+	}
+
+	/**
+	 * @return the sum of the capacities of all sections before the position
+	 */
+	long offset(int position) {
+		long sum = 0;
+		for (int node = position; node > 0; node -= Integer.lowestOneBit(node))
+			sum += tree[node];
+		return sum;
+	}
+
+	/**
+	 * @return the sum of the capacities of all sections
+	 */
+	long total() {
+		return offset(size);
+	}
+}
@@ -1,36 +1,70 @@
 package com.niton.memory.direct.managed;
 
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
-import com.niton.StorageException;
 import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.Preloader;
 
 public class VirtualMemory {
 	private final DataStore data;
 	private Section index;
-	private DataOutputStream indexDos,mainDos;
-	private DataInputStream indexDis,mainDis;
 	private BitSystem bits;
+	private final AllocationMode mode;
+	private final ExtentAllocator allocator;
+	private final SectionOffsets offsets;
 	public int getSectionHeaderSize(){
-		return 3*bits.getBase();
+		return mode.getIndexWords()*bits.getBase();
 	}
+	/**
+	 * The sections by their position, null for sections which were not used since the index was read
+	 */
 	private final ArrayList<Section> sectionCache = new ArrayList<>();
+	/**
+	 * True if every section in the index has its {@link Section} in the cache
+	 */
+	private boolean materialized = true;
+	/**
+	 * The number of index entries read at once
+	 */
+	private static final int READ_CHUNK = 1 << 16;
+	/**
+	 * Changes whenever sections are (re)read or relocated, so the {@link Section} objects or their order may have changed
+	 */
+	private int structureVersion;
 
 	public VirtualMemory(DataStore data) {
 		this(data,BitSystem.X32);
 	}
 	public VirtualMemory(DataStore data,BitSystem bits) {
+		this(data,bits,AllocationMode.SHIFTING);
+	}
+
+	/**
+	 * @param data the store to manage
+	 * @param bits the width of the addresses
+	 * @param mode how sections are laid out, a memory has to be read with the mode it was created with
+	 */
+	public VirtualMemory(DataStore data,BitSystem bits,AllocationMode mode) {
 		this.data = data;
 		this.bits = bits;
-		mainDos = new DataOutputStream(data.new DataStoreOutputStream());
-		mainDis = new DataInputStream(data.new DataStoreInputStream());
+		this.mode = mode;
+		this.allocator = mode == AllocationMode.RELOCATING || mode == AllocationMode.CHAINED ? new ExtentAllocator() : null;
+		this.offsets = mode == AllocationMode.RELATIVE ? new SectionOffsets() : null;
+	}
+
+	public AllocationMode getMode() {
+		return mode;
 	}
 	private class IndexSection extends Section {
 		public IndexSection(int configAddress, DataStore store, BitSystem system) {
@@ -41,12 +75,10 @@ public class VirtualMemory {
 		public String toString() {
 			StringBuilder builder = new StringBuilder();
 			builder.append("Index: (size:").append(size()).append(", end:").append(getEndAddress()).append(")\n");
-			DataInputStream dis = new DataInputStream(this.openReadStream());
 			long old = this.getMarker();
-			this.jump(0);
 			long sz = size()/getSectionHeaderSize();
 			for (int i = 0; i < sz; i++) {
-				printIndexEntry(builder, dis);
+				printIndexEntry(builder, this, i*getSectionHeaderSize());
 			}
 			this.jump(old);
 			return builder.toString();
@@ -56,76 +88,217 @@ public class VirtualMemory {
 		}
 	}
 
-	private void printIndexEntry(StringBuilder builder, DataInputStream dis){
-		try {
-			long blk,sz,end;
-			switch (bits){
-				case X8:
-					blk = dis.readByte();
-					sz= dis.readByte();
-					end = dis.readByte();
-					break;
-				case X16:
-					blk = dis.readShort();
-					sz= dis.readShort();
-					end = dis.readShort();
-					break;
-				case X32:
-					blk = dis.readInt();
-					sz= dis.readInt();
-					end = dis.readInt();
-					break;
-				case X64:
-					blk = dis.readLong();
-					sz= dis.readLong();
-					end = dis.readLong();
-					break;
-				default:
-					throw new IllegalStateException("Unexpected value: " + bits);
-			}
-			builder
-				.append("[blck:")
-				.append(blk)
-				.append(", size:")
-				.append(sz)
-				.append(", end:")
-				.append(end)
-				.append("]\n");
-		}catch (Exception e){
-			throw new StorageException(e);
+	/**
+	 * A section of a RELATIVE memory. Its index entry holds the capacity instead of the end address,
+	 * the start address is the end of the index plus the capacities of all sections before
+	 */
+	private class RelativeSection extends Section {
+		private int position;
+
+		private RelativeSection(long blockSizePointer, long endMarkPointer, long capacityPointer, int position) {
+			super(data, blockSizePointer, endMarkPointer, capacityPointer, capacityPointer, bits);
+			this.position = position;
+		}
+
+		private RelativeSection(long[] pointers, long[] header, int position) {
+			super(data, pointers, header, bits);
+			this.position = position;
+		}
+
+		@Override
+		public long getStartAddress() {
+			return index.getEndAddress()+offsets.offset(position);
+		}
+
+		@Override
+		public long capacity() {
+			//the end address word holds the capacity
+			return super.getEndAddress();
+		}
+
+		@Override
+		public long getEndAddress() {
+			return getStartAddress()+capacity();
+		}
+
+		@Override
+		public void setEndAddress(long endAddress) {
+			setCapacity(endAddress-getStartAddress());
+		}
+
+		@Override
+		void relocate(long startAddress, long endAddress) {
+			setCapacity(endAddress-startAddress);
+		}
+
+		private void setCapacity(long capacity) {
+			long amount = capacity-capacity();
+			super.setEndAddress(capacity);
+			offsets.add(position, amount);
 		}
 	}
 
+	private void printIndexEntry(StringBuilder builder, DataStore index, long address){
+		long blk = index.readWord(address,bits);
+		long sz = index.readWord(address+bits.getBase(),bits);
+		long last = index.readWord(address+getSectionHeaderSize()-bits.getBase(),bits);
+		builder
+			.append("[blck:")
+			.append(blk)
+			.append(", size:")
+			.append(sz)
+			.append(mode == AllocationMode.RELATIVE ? ", capacity:" : mode == AllocationMode.CHAINED ? ", last extent:" : ", end:")
+			.append(last)
+			.append("]\n");
+	}
+
 	public void initIndex(int enlargementInterval){
 		if(enlargementInterval < 1)
 			throw new IllegalArgumentException("Enlargement intervall must be > 0");
 
 		sectionCache.clear();
+		materialized = true;
+		if(offsets != null)
+			offsets.clear();
 		data.jump(0);
 
-		bits.write(data.getMarker(),0,data,mainDos);
-		bits.write(data.getMarker(),0,data,mainDos);
-		bits.write(data.getMarker(),0,data,mainDos);
-		bits.write(data.getMarker(),0,data,mainDos);
+		bits.write(data.getMarker(),0,data);
+		bits.write(data.getMarker(),0,data);
+		bits.write(data.getMarker(),0,data);
+		bits.write(data.getMarker(),0,data);
 
-		index = new IndexSection(0, data,bits);
+		index = createIndexHull();
 		index.refreshCaches();
-		indexDos = new DataOutputStream(index.new DataStoreOutputStream());
-		indexDis = new DataInputStream(index.new DataStoreInputStream());
 
 		index.init(getSectionHeaderSize()*enlargementInterval,0,index.getHeaderSize());
 		index.setEndMarker(0);
+		if(allocator != null) {
+			attach(index);
+			allocator.rebuild();
+		}
 	}
+	/**
+	 * Reads the index of an existing memory. The {@link Section}s are created when they are used for the first time,
+	 * only the RELATIVE, RELOCATING and CHAINED modes read the whole index right away (with large sequential reads)
+	 */
 	public void readIndex(){
 		sectionCache.clear();
-		index = new IndexSection(0, data,bits);
+		structureVersion++;
+		index = createIndexHull();
 		index.refreshCaches();
-		indexDos = new DataOutputStream(index.new DataStoreOutputStream());
-		indexDis = new DataInputStream(index.new DataStoreInputStream());
-		for (int i = 0; i < sectionCount(); i++) {
-			readSection(i);
+		long count = sectionCount();
+		sectionCache.addAll(Collections.nCopies((int) count, null));
+		materialized = count == 0;
+		if(mode == AllocationMode.SHIFTING)
+			index.setAllocator(materialized ? null : this::growMaterialized);
+		else if(mode == AllocationMode.CHAINED)
+			attach(index);
+		else
+			index.setAllocator(allocator);
+		if(offsets != null)
+			rebuildOffsets();
+		if(allocator != null)
+			allocator.rebuild();
+	}
+	/**
+	 * Reads the index entries of the sections from {@code from} to {@code to} (exclusive) with large sequential reads
+	 * and passes the header of each section, no {@link Section} is created
+	 */
+	private void readHeaders(long from, long to, HeaderConsumer consumer) {
+		int size = getSectionHeaderSize();
+		int base = bits.getBase();
+		//the start of a SHIFTING section is the end of the section before
+		long first = mode == AllocationMode.SHIFTING && from > 0 ? from-1 : from;
+		long previousEnd = index.getEndAddress();
+		if(to <= first)
+			return;
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(to-first, READ_CHUNK)*size);
+		for (long chunk = first; chunk < to; chunk += READ_CHUNK) {
+			int entries = (int) Math.min(to-chunk, READ_CHUNK);
+			buffer.clear().limit(entries*size);
+			index.read(chunk*size, buffer);
+			for (int e = 0; e < entries; e++) {
+				int entry = e*size;
+				long end = bits.get(buffer, entry+size-base);
+				long[] header = {
+						bits.get(buffer, entry),//block
+						bits.get(buffer, entry+base),//size
+						mode == AllocationMode.SHIFTING ? previousEnd : bits.get(buffer, entry+base*2),//start, first extent or capacity
+						end//end, last extent or capacity
+				};
+				previousEnd = end;
+				if(chunk+e >= from)
+					consumer.accept(chunk+e, header);
+			}
 		}
 	}
+
+	@FunctionalInterface
+	private interface HeaderConsumer {
+		/**
+		 * @param i the position of the section
+		 * @param header the block size, size, start and end word of the section
+		 */
+		void accept(long i, long[] header);
+	}
+
+	/**
+	 * Creates the missing {@link Section}s from {@code from} to {@code to} (exclusive)
+	 */
+	private void materialize(long from, long to) {
+		readHeaders(from, to, (i, header) -> {
+			if(sectionCache.get((int) i) != null)
+				return;
+			Section sect = getSectionHullAt(i, header);
+			attach(sect);
+			sectionCache.set((int) i, sect);
+			if(mode != AllocationMode.SHIFTING)
+				return;
+			//neighbours which exist already are linked right away, the others are linked by materializeAll
+			Section previous = i == 0 ? index : sectionCache.get((int) i-1);
+			if(previous != null)
+				link(previous, sect);
+			if(i+1 == sectionCache.size())
+				link(sect, null);
+			else if(sectionCache.get((int) i+1) != null)
+				link(sect, sectionCache.get((int) i+1));
+		});
+	}
+
+	/**
+	 * Creates all missing {@link Section}s. Needed before sections are shifted, as SHIFTING sections shift the ones behind them
+	 * and every section has to be moved when the index moves
+	 */
+	private void materializeAll() {
+		if(materialized)
+			return;
+		materialize(0, Math.min(sectionCount(), sectionCache.size()));
+		materialized = true;
+		if(mode != AllocationMode.SHIFTING)
+			return;
+		index.setAllocator(null);
+		Section previous = index;
+		for (Section sect : sectionCache) {
+			sect.setAllocator(null);
+			link(previous, sect);
+			previous = sect;
+		}
+		link(previous, null);
+	}
+
+	/**
+	 * Grows a SHIFTING section while not all sections are created: creates them and links them so they are shifted
+	 */
+	private void growMaterialized(Section section, long capacity) {
+		materializeAll();
+		section.enlarge(capacity-section.capacity());
+	}
+
+	private Section createIndexHull() {
+		if(mode == AllocationMode.CHAINED)
+			return new ChainedSection(data,0,bits.getBase(),bits.getBase()*2L,bits.getBase()*3L,bits);
+		return new IndexSection(0, data,bits);
+	}
 	public Section getIndex() {
 		return index;
 	}
@@ -136,40 +309,130 @@ public class VirtualMemory {
 	}
 	protected Section readSection(long i){
 		Section sect = getSectionHullAt(i);//end
-		if(i == 0){
-			sect.setStartAddressPointer(index.getEndAddressPointer());
-			index.enableRefShifting(sect);
-			index.shiftFlag = Section.SHIFT_END;
-		}else{
-			Section previous = get(i-1);
-			previous.enableRefShifting(sect);
-			previous.shiftFlag = Section.SHIFT_END;
-		}
+		attach(sect);
+		if(mode == AllocationMode.RELATIVE)
+			offsets.append(sect.capacity());
+		else if(mode == AllocationMode.SHIFTING)
+			link(i == 0 ? index : get(i-1), sect);
 		if(printig){
 			System.out.println("Add To Section Cache " + sect);
 			Arrays.stream(Thread.currentThread().getStackTrace()).forEach(System.out::println);
 		}
 		sectionCache.add(sect);
+		structureVersion++;
 		return sect;
 	}
 	private static boolean printig = false;
+
+	/**
+	 * Lets the section grow the way the mode requires (SHIFTING sections are {@link #link(Section, Section) linked} instead)
+	 */
+	private void attach(Section sect) {
+		if(mode == AllocationMode.RELATIVE)
+			//the start address is calculated from the capacities before, so growing does not touch the following sections
+			sect.setAllocator(this::growRelative);
+		else if(mode == AllocationMode.CHAINED)
+			//new extents reuse the space of deleted sections
+			((ChainedSection) sect).setExtentSource(this::allocateExtent);
+		else if(mode != AllocationMode.SHIFTING)
+			//relocating sections have their own start address and do not shift each other
+			sect.setAllocator(allocator);
+		else if(!materialized)
+			//the sections behind have to exist before they can be shifted
+			sect.setAllocator(this::growMaterialized);
+	}
+
+	/**
+	 * Makes a SHIFTING section shift the one behind it when it grows
+	 * @param previous the section before (or the index)
+	 */
+	private void link(Section previous, Section sect) {
+		previous.enableRefShifting(sect);
+		previous.shiftFlag = sect == null ? Section.SHIFT_START_AND_END : Section.SHIFT_END;
+	}
+
+	/**
+	 * @return the addresses of the block size, size, start and end words of the i-th section
+	 */
+	private long[] getHeaderPointers(long i) {
+		long entry = i * getSectionHeaderSize();
+		int base = bits.getBase();
+		if(mode == AllocationMode.SHIFTING) {
+			return new long[]{
+					index.resolveAddress(entry),//block
+					index.resolveAddress(entry + base),//size
+					i == 0 ? index.getEndAddressPointer() : index.resolveAddress(entry - base),//start (end of the previous)
+					index.resolveAddress(entry + base * 2L)//end
+			};
+		}
+		long address = index.resolveAddress(entry);
+		//the words of an entry are always stored together, even in a chained index
+		return new long[]{
+				address,//block
+				address + base,//size
+				address + base * 2L,//start, first extent or capacity
+				address + base * (mode == AllocationMode.RELATIVE ? 2L : 3L)//end, last extent or capacity
+		};
+	}
+
 	private Section getSectionHullAt(long i) {
-		return new Section(this.data,
-				index.resolveAddress(i * getSectionHeaderSize()),//block
-				index.resolveAddress(i * getSectionHeaderSize() + getBits().getBase()),//size
-				index.resolveAddress(i * getSectionHeaderSize() - getBits().getBase()),//start
-				index.resolveAddress(i * getSectionHeaderSize() + (getBits().getBase() * 2))
-				, bits);
+		long[] pointers = getHeaderPointers(i);
+		if(mode == AllocationMode.RELATIVE)
+			return new RelativeSection(pointers[0],pointers[1],pointers[2],(int) i);
+		if(mode == AllocationMode.CHAINED)
+			return new ChainedSection(this.data,pointers[0],pointers[1],pointers[2],pointers[3],bits);
+		return new Section(this.data,pointers[0],pointers[1],pointers[2],pointers[3],bits);
+	}
+
+	/**
+	 * @param header the values of the index entry, so nothing has to be read
+	 */
+	private Section getSectionHullAt(long i, long[] header) {
+		long[] pointers = getHeaderPointers(i);
+		if(mode == AllocationMode.RELATIVE)
+			return new RelativeSection(pointers,header,(int) i);
+		if(mode == AllocationMode.CHAINED)
+			return new ChainedSection(this.data,pointers,header,bits);
+		return new Section(this.data,pointers,header,bits);
+	}
+
+	/**
+	 * Points the cached sections from a position on to their index entries after the entries were moved.
+	 * The values in the entries moved along, so nothing is read
+	 */
+	private void repointSections(int from) {
+		for (int i = from; i < sectionCache.size(); i++) {
+			Section sect = sectionCache.get(i);
+			if(sect == null)
+				continue;
+			long[] pointers = getHeaderPointers(i);
+			sect.moveHeader(pointers[0],pointers[1],pointers[2],pointers[3]);
+			if(sect instanceof RelativeSection)
+				((RelativeSection) sect).position = i;
+		}
+		structureVersion++;
+	}
+
+	/**
+	 * Rebuilds the offsets of a RELATIVE memory from the capacities in the index
+	 */
+	private void rebuildOffsets() {
+		offsets.clear();
+		readHeaders(0, sectionCount(), (i, header) -> offsets.append(header[3]));
 	}
 
 	public Section createSection(long blockSize, long initialBlocks){
 		long priorSize = sectionCount();
+		if(mode != AllocationMode.SHIFTING) {
+			writeEntry(priorSize, blockSize, initialBlocks);
+			return readSection(priorSize);
+		}
 		Section sect = readSection(priorSize);
 		index.jump(priorSize*getSectionHeaderSize());
 
-		bits.write(index.getMarker(),blockSize,index,indexDos);
-		bits.write(index.getMarker(),0,index,indexDos);
-		bits.write(index.getMarker(),sect.getStartAddress()+blockSize*initialBlocks,index,indexDos);
+		bits.write(index.getMarker(),blockSize,index);
+		bits.write(index.getMarker(),0,index);
+		bits.write(index.getMarker(),sect.getStartAddress()+blockSize*initialBlocks,index);
 		sect.refreshCaches();
 		return sect;
 	}
@@ -178,7 +441,12 @@ public class VirtualMemory {
 	public Section get(long i){
 		if(i<0)
 			throw new IllegalArgumentException("you cant get negative indices");
-		return sectionCache.get((int) i);
+		Section sect = sectionCache.get((int) i);
+		if(sect == null) {
+			materialize(i, i+1);
+			sect = sectionCache.get((int) i);
+		}
+		return sect;
 	}
 
 	@Override
@@ -218,11 +486,58 @@ public class VirtualMemory {
 	public void deleteSegment(long index) {
 		if(index >= sectionCount() || index < 0)
 			throw new IndexOutOfBoundsException((int) index);
-		if(sectionCount() == index+1)
+		if(mode != AllocationMode.SHIFTING) {
+			Section deleted = get(index);
+			if(mode == AllocationMode.CHAINED)
+				((ChainedSection) deleted).forEachExtent(allocator::release);
+			else if(allocator != null)
+				allocator.release(deleted.getStartAddress(), deleted.getEndAddress());
+			if(mode == AllocationMode.RELATIVE)
+				shiftData(deleted.getEndAddress(), -deleted.capacity());
+			long count = sectionCount();
+			long entry = index*getSectionHeaderSize();
+			this.index.move(entry+getSectionHeaderSize(), entry, (count-index-1)*getSectionHeaderSize());
+			this.index.cut((count-1)*getSectionHeaderSize());
+			sectionCache.remove((int) index);
+			repointSections((int) index);
+			if(mode == AllocationMode.RELATIVE) {
+				offsets.remove((int) index);
+				long end = this.index.getEndAddress()+offsets.total();
+				if(data.size() > end)
+					data.cut(end);
+			}
+			return;
+		}
+		materializeAll();
+		if(sectionCount() == index+1) {
 			this.index.cut(index*getSectionHeaderSize());
-		else
+			sectionCache.remove((int) index);
+			link(index == 0 ? this.index : get(index-1), null);
+			structureVersion++;
+		}else
 			shiftSegmentsBackwards(index+1);
-		readIndex();
+	}
+
+	/**
+	 * Shifts all data behind an address (RELATIVE mode)
+	 */
+	private void shiftData(long from, long amount) {
+		if(from >= data.size() || amount == 0)
+			return;
+		data.jump(from);
+		data.shiftAll(amount);
+	}
+
+	/**
+	 * Grows a section of a RELATIVE memory by shifting the data behind it, only the capacity of the section itself is written
+	 */
+	private void growRelative(Section section, long capacity) {
+		long end = section.getEndAddress();
+		long amount = capacity-section.capacity();
+		if(amount <= 0)
+			return;
+		shiftData(end, amount);
+		section.setEndAddress(end+amount);
 	}
 
 	/**
@@ -230,11 +545,13 @@ public class VirtualMemory {
 	 */
 	private void shiftSegmentsBackwards(long from) {
 		long mvSize = get(from-1).capacity();
-		get(from).shiftBack(mvSize);
+		get(from).shiftSection(-mvSize);
 		this.index.jump(from*getSectionHeaderSize());
 		index.shiftAll(-getSectionHeaderSize());
 		index.cut(index.size()-getSectionHeaderSize());
-		readIndex();
+		sectionCache.remove((int) from-1);
+		repointSections((int) from-1);
+		link(from == 1 ? index : get(from-2), get(from-1));
 		data.cut(get(sectionCount()-1).getEndAddress());
 	}
 
@@ -242,6 +559,23 @@ public class VirtualMemory {
 		if(i == sectionCount()) {
 			return createSection(blockSize,initialBlocks);
 		}
+		if(mode != AllocationMode.SHIFTING) {
+			long count = sectionCount();
+			//the index grows before the entries are moved, as growing may relocate sections
+			index.writeWord((count+1)*getSectionHeaderSize()-bits.getBase(),0,bits);
+			if(mode == AllocationMode.RELATIVE)
+				shiftData(get(i).getStartAddress(), blockSize*initialBlocks);
+			index.move(i*getSectionHeaderSize(), (i+1)*getSectionHeaderSize(), (count-i)*getSectionHeaderSize());
+			writeEntry(i, blockSize, initialBlocks);
+			Section sect = getSectionHullAt(i);
+			attach(sect);
+			sectionCache.add(i, sect);
+			repointSections(i+1);
+			if(mode == AllocationMode.RELATIVE)
+				offsets.insert(i, blockSize*initialBlocks);
+			return sect;
+		}
+		materializeAll();
 		long mvSize = blockSize*initialBlocks;
 
 		Section old = get(i);
@@ -256,39 +590,183 @@ public class VirtualMemory {
 		index.jump(i*getSectionHeaderSize());
 		index.shiftAll(getSectionHeaderSize());
 
-		old.shiftHeader(getSectionHeaderSize(),false);
+		//the entries from i on moved one entry further
+		Section s = getSectionHullAt(i);
+		sectionCache.add(i, s);
+		repointSections(i+1);
 		old.setEndMarker(oldSize);
-		Section s = new Section(0,this.data,bits);
-		long indexStart = index.getStartAddress();
-		s.setStartAddressPointer(indexStart+i*getSectionHeaderSize()-bits.getBase());
-		s.setBlockSizePointer(indexStart+i*getSectionHeaderSize());
-		s.setEndMarkPointer(indexStart+i*getSectionHeaderSize()+bits.getBase());
-		s.setEndAddressPointer(indexStart+i*getSectionHeaderSize()+ (bits.getBase()*2));
 		s.init(blockSize,initialBlocks,oldStart);
-		readIndex();
-		return get(i);
+		//the start of the old section is the end of the new one
+		old.refreshCaches();
+		link(i == 0 ? index : get(i-1), s);
+		link(s, old);
+		return s;
 	}
+	/**
+	 * Writes the index entry of a new section and allocates its space (all modes but SHIFTING)
+	 */
+	private void writeEntry(long i, long blockSize, long initialBlocks) {
+		long entry = i*getSectionHeaderSize();
+		//grows the index first, which may relocate sections, before the space for the section is taken
+		index.writeWord(entry+getSectionHeaderSize()-bits.getBase(),0,bits);
+		if(mode == AllocationMode.RELATIVE) {
+			//the space of a new section at the end needs no shifting, inserted sections are shifted in by insertSection
+			index.writeWord(entry,blockSize,bits);
+			index.writeWord(entry+bits.getBase(),0,bits);
+			index.writeWord(entry+bits.getBase()*2L,blockSize*initialBlocks,bits);
+			return;
+		}
+		if(mode == AllocationMode.CHAINED) {
+			//the entry may contain the extents of a removed section
+			index.writeWord(entry+bits.getBase()*2L,0,bits);
+			Section sect = getSectionHullAt(i);
+			attach(sect);
+			sect.init(blockSize,initialBlocks,0);
+			return;
+		}
+		long length = blockSize*initialBlocks;
+		long start = allocator.allocate(length);
+		index.writeWord(entry,blockSize,bits);
+		index.writeWord(entry+bits.getBase(),0,bits);
+		index.writeWord(entry+bits.getBase()*2L,start,bits);
+		index.writeWord(entry+bits.getBase()*3L,start+length,bits);
+	}
+
 	public String printIndex(){
-		try {
-			StringBuilder s = new StringBuilder();
-			s.append(index).append("\n");
-
-			long sections = sectionCount();
-			index.jump(0);
-
-			for (int i = 0; i < sections; i++) {
-				if(i==0)
-					s.append("[   0   ]");
-				else{
-					index.skip(getSectionHeaderSize());
-					s.append("[   ").append(indexDis.readLong()).append("   ]");
-				}
+		StringBuilder s = new StringBuilder();
+		s.append(index).append("\n");
+
+		long sections = sectionCount();
+		index.jump(0);
+
+		for (int i = 0; i < sections; i++) {
+			if(i==0)
+				s.append("[   0   ]");
+			else{
+				index.skip(getSectionHeaderSize());
+				s.append("[   ").append(index.readWord(index.getMarker(),BitSystem.X64)).append("   ]");
+				index.skip(BitSystem.X64.getBase());
 			}
+		}
+
+		return s.toString();
+	}
+
+	/**
+	 * Makes sure all changes survive a crash
+	 * @see DataStore#sync()
+	 */
+	public void sync() {
+		data.sync();
+	}
+
+	/**
+	 * Creates a {@link Preloader} to warm up this memory after opening it. More sections can be added before it is started
+	 * @param wholeStore true to load the whole underlying store, false to only load the index
+	 * @return the (not yet started) preloader
+	 */
+	public Preloader preload(boolean wholeStore) {
+		Preloader preloader = new Preloader();
+		if(wholeStore)
+			return preloader.add(data);
+		return preloadIndex(preloader);
+	}
+
+	/**
+	 * Adds the header and the index of this memory to a preloader
+	 * @return the preloader
+	 */
+	public Preloader preloadIndex(Preloader preloader) {
+		return preloader.add(data,0,index.getStartAddress()).add(index);
+	}
+
+	/**
+	 * Copies the whole memory (index and sections) into another store. The copy can be read with {@link #readIndex()} right away
+	 * @param target the store to copy to
+	 * @see DataStore#transferTo(DataStore)
+	 */
+	public void transferTo(DataStore target) {
+		data.transferTo(target);
+	}
+
+	/**
+	 * Checks the index and the used part of all sections for corrupted data. The sections are verified in parallel
+	 * @return false if corrupted data was found
+	 * @see DataStore#verify(long, long)
+	 */
+	public boolean verify() {
+		if(!data.verify(0,index.getStartAddress()) || !index.verify())
+			return false;
+		materializeAll();
+		ArrayList<Section> sections = new ArrayList<>(sectionCache);
+		return sections.parallelStream().allMatch(Section::verify);
+	}
+
+	/**
+	 * Creates a {@link Compactor} which gives the unused capacity of this memory back step by step
+	 */
+	public Compactor compactor() {
+		if(mode == AllocationMode.CHAINED)
+			throw new UnsupportedOperationException("Chained sections can not be compacted");
+		return new Compactor(this);
+	}
+
+	/**
+	 * Moves all sections together so that no section has unused capacity and cuts the store behind the last section
+	 * @see #compactor()
+	 */
+	public void compact() {
+		compactor().run(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	int getStructureVersion() {
+		return structureVersion;
+	}
+
+	/**
+	 * @return the sections ordered by their address, sections without space are left out in RELOCATING mode
+	 */
+	List<Section> sectionsByAddress() {
+		materializeAll();
+		ArrayList<Section> sections = new ArrayList<>(sectionCache);
+		if(allocator != null) {
+			sections.removeIf(section -> section.capacity() <= 0);
+			sections.sort(Comparator.comparingLong(Section::getStartAddress));
+		}
+		return sections;
+	}
+
+	/**
+	 * Moves a section directly behind the used part of the section before it. The unused capacity of the previous section
+	 * is added to the end of the moved section, so its end address stays the same
+	 * @param previous the section before (or the index)
+	 * @param section the section to move
+	 */
+	void compactBehind(Section previous, Section section) {
+		long target = previous.getStartAddress()+previous.size();
+		long start = section.getStartAddress();
+		if(start <= target)
+			return;
+		data.move(start, target, section.size());
+		section.relocate(target, section.getEndAddress());
+		previous.setEndAddress(target);
+		if(allocator != null)
+			allocator.claim(target, start);
+	}
 
-			return s.toString();
-		} catch (IOException e) {
-			throw new StorageException(e);
+	/**
+	 * Removes the unused capacity of the last section (or the index) and cuts the store behind it
+	 */
+	void compactEnd(Section last) {
+		long end = last.getStartAddress()+last.size();
+		if(end < last.getEndAddress())
+			last.setEndAddress(end);
+		if(allocator != null) {
+			allocator.rebuild();
+			end = allocator.top;
 		}
+		if(data.size() > end)
+			data.cut(end);
 	}
 
 	public BitSystem getBits() {
@@ -299,4 +777,170 @@ public class VirtualMemory {
 	public void setIndexIncrement(int i) {
 		getIndex().setBlockSize(i*getSectionHeaderSize());
 	}
+
+	/**
+	 * Takes the space for an extent of a CHAINED section. Reused space is cleared, like new space at the end of the store
+	 */
+	private long allocateExtent(long length) {
+		long start = allocator.allocate(length);
+		long end = Math.min(start+length, data.size());
+		for (long at = start; at < end; at += READ_CHUNK)
+			data.write(at, ByteBuffer.allocate((int) Math.min(READ_CHUNK, end-at)));
+		return start;
+	}
+
+	/**
+	 * Keeps track of the free extents of a RELOCATING or CHAINED memory. The free extents are the gaps between the header,
+	 * the index and the sections (or their extents), so they are rebuilt from the index when it is read
+	 */
+	private class ExtentAllocator implements Section.Allocator {
+		/**
+		 * start -> end of the free extents, sorted by address
+		 */
+		private final TreeMap<Long, Long> free = new TreeMap<>();
+		/**
+		 * The end of the last used extent, everything behind it is free
+		 */
+		private long top;
+
+		private void rebuild() {
+			free.clear();
+			TreeMap<Long, Long> used = new TreeMap<>();
+			used.put(0L, (long) index.getHeaderSize());
+			if (mode == AllocationMode.CHAINED) {
+				((ChainedSection) index).forEachExtent((start, end) -> used.merge(start, end, Math::max));
+				readHeaders(0, sectionCount(), (i, header) -> ChainedSection.forEachExtent(data, header[2], bits,
+						(start, end) -> used.merge(start, end, Math::max)));
+			} else {
+				used.merge(index.getStartAddress(), index.getEndAddress(), Math::max);
+				readHeaders(0, sectionCount(), (i, header) -> {
+					if (header[3] > header[2])
+						used.merge(header[2], header[3], Math::max);
+				});
+			}
+			long end = 0;
+			for (Map.Entry<Long, Long> extent : used.entrySet()) {
+				if (extent.getKey() > end)
+					free.put(end, extent.getKey());
+				end = Math.max(end, extent.getValue());
+			}
+			top = end;
+		}
+
+		/**
+		 * Takes the first free extent that is big enough, or space at the end of the store
+		 * @return the start of the allocated extent
+		 */
+		private long allocate(long length) {
+			if (length <= 0)
+				return top;
+			for (Map.Entry<Long, Long> extent : free.entrySet()) {
+				//the entry must not be used after it was removed, the map may reuse it for another extent
+				long start = extent.getKey();
+				long end = extent.getValue();
+				if (end - start >= length) {
+					free.remove(start);
+					if (end - start > length)
+						free.put(start + length, end);
+					return start;
+				}
+			}
+			long start = top;
+			top += length;
+			return start;
+		}
+
+		/**
+		 * Marks an extent as free, merging it with its neighbours. Free space at the end of the store is cut away
+		 */
+		private void release(long start, long end) {
+			if (end <= start)
+				return;
+			Map.Entry<Long, Long> before = free.floorEntry(start);
+			if (before != null && before.getValue() >= start) {
+				free.remove(before.getKey());
+				start = before.getKey();
+				end = Math.max(end, before.getValue());
+			}
+			Long after = free.remove(end);
+			if (after != null)
+				end = after;
+			if (end >= top) {
+				top = start;
+				if (data.size() > top)
+					data.cut(top);
+			} else {
+				free.put(start, end);
+			}
+		}
+
+		/**
+		 * Marks an extent as used, it must not be used by another section afterwards
+		 */
+		private void claim(long start, long end) {
+			if (start > top)
+				free.put(top, start);
+			top = Math.max(top, end);
+			Map.Entry<Long, Long> extent;
+			while ((extent = free.lowerEntry(end)) != null && extent.getValue() > start) {
+				free.remove(extent.getKey());
+				if (extent.getKey() < start)
+					free.put(extent.getKey(), start);
+				if (extent.getValue() > end)
+					free.put(end, extent.getValue());
+			}
+		}
+
+		private boolean isFree(long start, long end) {
+			if (start >= top)
+				return true;
+			Map.Entry<Long, Long> extent = free.floorEntry(start);
+			return extent != null && extent.getValue() >= end;
+		}
+
+		@Override
+		public void grow(Section section, long capacity) {
+			long start = section.getStartAddress();
+			long end = section.getEndAddress();
+			long newEnd = start + capacity;
+			if (newEnd <= end)
+				return;
+			if (end == top || isFree(end, newEnd)) {
+				claim(end, newEnd);
+				section.setEndAddress(newEnd);
+			} else if (section == index) {
+				//the addresses of all sections are stored in the index, so the sections in the way are moved instead of the index
+				growIndex(newEnd);
+			} else {
+				//grows geometrically so that appending to a section does not move it again and again
+				long blockSize = Math.max(1, section.getBlockSize());
+				long grown = Math.max(capacity, section.capacity() + section.capacity() / 2);
+				capacity = (grown + blockSize - 1) / blockSize * blockSize;
+				long newStart = allocate(capacity);
+				data.move(start, newStart, section.size());
+				section.relocate(newStart, newStart + capacity);
+				structureVersion++;
+				release(start, end);
+			}
+		}
+
+		private void growIndex(long newEnd) {
+			long end = index.getEndAddress();
+			claim(end, newEnd);
+			materializeAll();
+			for (Section section : sectionCache) {
+				long start = section.getStartAddress();
+				long sectionEnd = section.getEndAddress();
+				if (section.capacity() <= 0 || start >= newEnd || sectionEnd <= end)
+					continue;
+				long newStart = allocate(section.capacity());
+				data.move(start, newStart, section.size());
+				section.relocate(newStart, newStart + section.capacity());
+				structureVersion++;
+				if (sectionEnd > newEnd)
+					release(newEnd, sectionEnd);
+			}
+			index.setEndAddress(newEnd);
+		}
+	}
 }
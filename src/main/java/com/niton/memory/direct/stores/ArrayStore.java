@@ -1,7 +1,9 @@
 package com.niton.memory.direct.stores;
 
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
 import com.niton.memory.direct.stores.*;
 import com.niton.memory.direct.managed.*;
 public class ArrayStore extends FixedDataStore {
@@ -18,23 +20,68 @@ public class ArrayStore extends FixedDataStore {
 
 	@Override
 	protected byte[] fixedInnerRead(long from, long to) {
+		byte[] res = new byte[(int) (to-from)];
+		fixedInnerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected void fixedInnerRead(long from, ByteBuffer dst) {
+		long to = from+dst.remaining();
 		if(from > Integer.MAX_VALUE || to > Integer.MAX_VALUE)
 			throw new IndexOutOfBoundsException("ArrayStores do not support values bigger than Integer.MAX_VALUE");
-		jump(to);
-		return Arrays.copyOfRange(data,(int)from,(int)to);
+		dst.put(data,(int)from,(int)(to-from));
 	}
 
 
 	@Override
 	protected void fixedInnerWrite(byte[] data, long from, long to) {
-		if(from > Integer.MAX_VALUE || to > Integer.MAX_VALUE)
+		fixedInnerWrite(from, ByteBuffer.wrap(data,0,(int)(to-from)));
+	}
+
+	@Override
+	protected void fixedInnerWrite(long to, ByteBuffer src) {
+		long end = to+src.remaining();
+		if(to > Integer.MAX_VALUE || end > Integer.MAX_VALUE)
+			throw new IndexOutOfBoundsException("ArrayStores do not support values bigger than Integer.MAX_VALUE");
+		src.get(data,(int)to,(int)(end-to));
+	}
+
+
+	@Override
+	protected long fixedReadWord(long address, BitSystem bits) {
+		if(address+bits.getBase() > Integer.MAX_VALUE)
+			throw new IndexOutOfBoundsException("ArrayStores do not support values bigger than Integer.MAX_VALUE");
+		return bits.get(data,(int)address);
+	}
+
+	@Override
+	protected void fixedWriteWord(long address, long value, BitSystem bits) {
+		if(address+bits.getBase() > Integer.MAX_VALUE)
 			throw new IndexOutOfBoundsException("ArrayStores do not support values bigger than Integer.MAX_VALUE");
-		for (int i = (int) from; i < to; i++) {
-			this.data[i] = data[(int) (i-from)];
-		}
-		jump(to);
+		bits.put(data,(int)address,value);
 	}
 
+	@Override
+	protected void fixedMove(long from, long to, long length) {
+		if(from+length > Integer.MAX_VALUE || to+length > Integer.MAX_VALUE)
+			throw new IndexOutOfBoundsException("ArrayStores do not support values bigger than Integer.MAX_VALUE");
+		System.arraycopy(data,(int)from,data,(int)to,(int)length);
+	}
+
+	/**
+	 * Writes the range into the target straight out of the array, without buffering
+	 */
+	@Override
+	public void copyRange(long from, long to, DataStore target, long targetAddress) {
+		if(to <= from)
+			return;
+		if(from > maxLength() || to > maxLength())
+			throw new Section.SegmentationFault(to+" is outside the readable area (0-"+maxLength()+")");
+		if(from < 0 || targetAddress < 0)
+			throw new NegativeIndexException();
+		target.write(targetAddress, ByteBuffer.wrap(data,(int)from,(int)(to-from)));
+	}
 
 	public byte[] getData() {
 		return data;
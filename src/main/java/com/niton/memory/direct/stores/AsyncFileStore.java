@@ -0,0 +1,181 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.StorageException;
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
+import com.niton.memory.direct.SyncPolicy;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A file backed DataStore on top of an {@link AsynchronousFileChannel}.<br>
+ * Besides the normal (blocking) methods {@link #readAsync(long, long)} and {@link #writeAsync(long, ByteBuffer)} start
+ * the IO and return at once, so many reads (eg. of different {@link com.niton.memory.direct.managed.Section}s) can be in flight at the same time.
+ * The blocking methods just wait for the asynchronous operation to finish.
+ */
+public class AsyncFileStore extends DataStore implements Closeable {
+	private final AsynchronousFileChannel channel;
+	private SyncPolicy syncPolicy = SyncPolicy.none();
+	private volatile long length;
+
+	public AsyncFileStore(File f) throws IOException {
+		this(AsynchronousFileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+	}
+
+	public AsyncFileStore(AsynchronousFileChannel channel) throws IOException {
+		this.channel = channel;
+		this.length = channel.size();
+	}
+
+	@Override
+	public long size() {
+		return length;
+	}
+
+	public AsynchronousFileChannel getChannel() {
+		return channel;
+	}
+
+	public SyncPolicy getSyncPolicy() {
+		return syncPolicy;
+	}
+
+	/**
+	 * Sets when this store syncs its changes to the disk, {@link SyncPolicy#none()} by default
+	 */
+	public void setSyncPolicy(SyncPolicy syncPolicy) {
+		this.syncPolicy = syncPolicy;
+	}
+
+	@Override
+	protected byte[] innerRead(long from, long to) {
+		byte[] res = new byte[(int) (to - from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected void innerRead(long from, ByteBuffer dst) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		await(transfer(dst, from, false));
+	}
+
+	@Override
+	protected void innerWrite(byte[] data, long from, long to) {
+		innerWrite(from, ByteBuffer.wrap(data, 0, (int) (to - from)));
+	}
+
+	@Override
+	protected void innerWrite(long to, ByteBuffer src) {
+		await(writeAsync(to, src));
+	}
+
+	@Override
+	public CompletableFuture<ByteBuffer> readAsync(long from, long to) {
+		if (from < 0)
+			return CompletableFuture.failedFuture(new NegativeIndexException());
+		ByteBuffer dst = ByteBuffer.allocate((int) (to - from));
+		return transfer(dst, from, false).thenApply(v -> dst.flip());
+	}
+
+	@Override
+	public CompletableFuture<Void> writeAsync(long to, ByteBuffer src) {
+		if (to < 0)
+			return CompletableFuture.failedFuture(new NegativeIndexException());
+		long written = src.remaining();
+		long end = to + written;
+		synchronized (this) {
+			length = Math.max(length, end);
+		}
+		return transfer(src, to, true).thenRun(() -> syncPolicy.changed(this, written));
+	}
+
+	/**
+	 * Reads or writes until the buffer is full/empty. Bytes behind the end of the file read as 0
+	 *
+	 * @param buffer   the buffer to read into or write from
+	 * @param position the position in the file to start at
+	 * @param write    true to write the buffer, false to read into it
+	 * @return a future completing when the whole buffer was transferred
+	 */
+	private CompletableFuture<Void> transfer(ByteBuffer buffer, long position, boolean write) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		CompletionHandler<Integer, Long> handler = new CompletionHandler<>() {
+			@Override
+			public void completed(Integer result, Long start) {
+				if (result < 0) {
+					while (buffer.hasRemaining())
+						buffer.put((byte) 0);
+				}
+				if (!buffer.hasRemaining()) {
+					future.complete(null);
+					return;
+				}
+				long next = start + result;
+				if (write)
+					channel.write(buffer, next, next, this);
+				else
+					channel.read(buffer, next, next, this);
+			}
+
+			@Override
+			public void failed(Throwable e, Long start) {
+				future.completeExceptionally(new StorageException(e));
+			}
+		};
+		if (!buffer.hasRemaining())
+			future.complete(null);
+		else if (write)
+			channel.write(buffer, position, position, handler);
+		else
+			channel.read(buffer, position, position, handler);
+		return future;
+	}
+
+	private static <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new StorageException(e.getCause());
+		}
+	}
+
+	@Override
+	public void sync() {
+		try {
+			channel.force(true);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	@Override
+	public synchronized long cut(long from) {
+		try {
+			long sz = size();
+			channel.truncate(from);
+			length = from;
+			jump(from);
+			syncPolicy.changed(this, 0);
+			return sz - from;
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
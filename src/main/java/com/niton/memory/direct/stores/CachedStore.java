@@ -0,0 +1,279 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
+import com.niton.memory.direct.managed.BitSystem;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A DataStore that caches the pages of another DataStore.<br>
+ * The wrapped store is split into pages of a fixed size, the most recently used pages are kept in memory (LRU).
+ * Writes can either go to the wrapped store at once ({@link WritePolicy#WRITE_THROUGH})
+ * or when the page is evicted/{@link #flush() flushed} ({@link WritePolicy#WRITE_BACK}).
+ * The policy can be set for the whole store and for single pages.<br>
+ * Attention! When using write back the wrapped store is only up to date after {@link #flush()}.<br>
+ * The cache is synchronized, so it can be shared by multiple cursors or parallel streams
+ */
+public class CachedStore extends DataStore {
+	public enum WritePolicy {
+		/**
+		 * Every write is passed to the wrapped store immediately
+		 */
+		WRITE_THROUGH,
+		/**
+		 * Writes are only kept in the cache and written when the page is evicted or flushed
+		 */
+		WRITE_BACK
+	}
+
+	public static final int DEFAULT_PAGE_SIZE = 4 * 1024;
+	public static final int DEFAULT_MAX_PAGES = 1024;
+
+	private final DataStore store;
+	private final int pageSize;
+	private final int maxPages;
+	private final boolean offHeap;
+	private final Map<Long, WritePolicy> pagePolicies = new HashMap<>();
+	private final LinkedHashMap<Long, Page> pages;
+	private WritePolicy writePolicy;
+	private long length;
+
+	public CachedStore(DataStore store) {
+		this(store, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES, WritePolicy.WRITE_THROUGH, false);
+	}
+
+	/**
+	 * @param store       the store to cache
+	 * @param pageSize    the size of a page in bytes
+	 * @param maxPages    the maximum number of pages kept in memory
+	 * @param writePolicy the policy used for all pages without an own policy
+	 * @param offHeap     if true the pages are stored in direct buffers instead of the heap
+	 */
+	public CachedStore(DataStore store, int pageSize, int maxPages, WritePolicy writePolicy, boolean offHeap) {
+		if (pageSize < 1)
+			throw new IllegalArgumentException("Page size must be > 0");
+		if (maxPages < 1)
+			throw new IllegalArgumentException("At least one page needs to be cached");
+		this.store = store;
+		this.pageSize = pageSize;
+		this.maxPages = maxPages;
+		this.writePolicy = writePolicy;
+		this.offHeap = offHeap;
+		this.length = store.size();
+		this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Page> eldest) {
+				if (size() <= CachedStore.this.maxPages)
+					return false;
+				writeBack(eldest.getKey(), eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	@Override
+	public long size() {
+		return length;
+	}
+
+	public DataStore getStore() {
+		return store;
+	}
+
+	public WritePolicy getWritePolicy() {
+		return writePolicy;
+	}
+
+	/**
+	 * Sets the write policy for all pages which have no own policy
+	 */
+	public void setWritePolicy(WritePolicy writePolicy) {
+		this.writePolicy = writePolicy;
+	}
+
+	/**
+	 * Sets the write policy for all pages containing at least one byte of the given range
+	 *
+	 * @param from   the start of the range (inclusive)
+	 * @param to     the end of the range (exclusive)
+	 * @param policy the policy to use for this pages, null to use the default policy again
+	 */
+	public void setWritePolicy(long from, long to, WritePolicy policy) {
+		for (long page = from / pageSize; page * pageSize < to; page++) {
+			if (policy == null)
+				pagePolicies.remove(page);
+			else
+				pagePolicies.put(page, policy);
+		}
+	}
+
+	public WritePolicy getWritePolicy(long address) {
+		return pagePolicies.getOrDefault(address / pageSize, writePolicy);
+	}
+
+	@Override
+	protected byte[] innerRead(long from, long to) {
+		byte[] res = new byte[(int) (to - from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected synchronized void innerRead(long from, ByteBuffer dst) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		long address = from;
+		while (dst.hasRemaining()) {
+			long page = address / pageSize;
+			int pageOffset = (int) (address % pageSize);
+			int n = Math.min(dst.remaining(), pageSize - pageOffset);
+			ByteBuffer view = getPage(page, false).data.duplicate();
+			view.position(pageOffset);
+			view.limit(pageOffset + n);
+			dst.put(view);
+			address += n;
+		}
+	}
+
+	@Override
+	protected void innerWrite(byte[] data, long from, long to) {
+		innerWrite(from, ByteBuffer.wrap(data, 0, (int) (to - from)));
+	}
+
+	@Override
+	protected synchronized void innerWrite(long to, ByteBuffer src) {
+		if (to < 0)
+			throw new NegativeIndexException();
+		long address = to;
+		//grow first, pages evicted while writing are only written back up to the length
+		length = Math.max(length, to + src.remaining());
+		while (src.hasRemaining()) {
+			long page = address / pageSize;
+			int pageOffset = (int) (address % pageSize);
+			int n = Math.min(src.remaining(), pageSize - pageOffset);
+			Page cached = getPage(page, n == pageSize);
+			ByteBuffer part = src.duplicate();
+			part.limit(part.position() + n);
+			ByteBuffer view = cached.data.duplicate();
+			view.position(pageOffset);
+			view.put(part.duplicate());
+			if (getWritePolicy(address) == WritePolicy.WRITE_THROUGH)
+				store.write(address, part);
+			else
+				cached.dirty = true;
+			src.position(src.position() + n);
+			address += n;
+		}
+	}
+
+	@Override
+	public synchronized long readWord(long address, BitSystem bits) {
+		int pageOffset = (int) (address % pageSize);
+		if (address < 0 || pageOffset + bits.getBase() > pageSize)
+			return super.readWord(address, bits);
+		long value = bits.get(getPage(address / pageSize, false).data, pageOffset);
+		return value;
+	}
+
+	@Override
+	public synchronized void writeWord(long address, long value, BitSystem bits) {
+		int pageOffset = (int) (address % pageSize);
+		if (address < 0 || pageOffset + bits.getBase() > pageSize) {
+			super.writeWord(address, value, bits);
+			return;
+		}
+		Page cached = getPage(address / pageSize, false);
+		bits.put(cached.data, pageOffset, value);
+		if (getWritePolicy(address) == WritePolicy.WRITE_THROUGH)
+			store.writeWord(address, value, bits);
+		else
+			cached.dirty = true;
+		length = Math.max(length, address + bits.getBase());
+	}
+
+	/**
+	 * @param page        the index of the page
+	 * @param overwritten if true the page will be fully overwritten, so it is not read from the wrapped store
+	 * @return the cached page, loaded if necessary
+	 */
+	private Page getPage(long page, boolean overwritten) {
+		Page cached = pages.get(page);
+		if (cached != null)
+			return cached;
+		cached = new Page(offHeap ? ByteBuffer.allocateDirect(pageSize) : ByteBuffer.allocate(pageSize));
+		long start = page * pageSize;
+		long end = Math.min(start + pageSize, store.size());
+		if (!overwritten && end > start) {
+			ByteBuffer view = cached.data.duplicate();
+			view.limit((int) (end - start));
+			store.read(start, view);
+		}
+		pages.put(page, cached);
+		return cached;
+	}
+
+	private void writeBack(long page, Page cached) {
+		if (!cached.dirty)
+			return;
+		long start = page * pageSize;
+		long end = Math.min(start + pageSize, length);
+		if (end > start) {
+			ByteBuffer view = cached.data.duplicate();
+			view.position(0);
+			view.limit((int) (end - start));
+			store.write(start, view);
+		}
+		cached.dirty = false;
+	}
+
+	/**
+	 * Writes all modified pages to the wrapped store
+	 */
+	public synchronized void flush() {
+		TreeMap<Long, Page> sorted = new TreeMap<>(pages);
+		for (Map.Entry<Long, Page> entry : sorted.entrySet())
+			writeBack(entry.getKey(), entry.getValue());
+	}
+
+	/**
+	 * {@link #flush() Flushes} the cache and syncs the wrapped store
+	 */
+	@Override
+	public void sync() {
+		flush();
+		store.sync();
+	}
+
+	@Override
+	public synchronized long cut(long from) {
+		long sz = size();
+		pages.keySet().removeIf(page -> page * pageSize >= from);
+		//the cached page holding the new end must read as 0 behind it when the store grows again
+		Page last = pages.get(from / pageSize);
+		int lastOffset = (int) (from % pageSize);
+		if (last != null && lastOffset != 0) {
+			ByteBuffer view = last.data.duplicate();
+			view.position(lastOffset);
+			view.put(ByteBuffer.allocate(pageSize - lastOffset));
+		}
+		length = from;
+		if (store.size() > from)
+			store.cut(from);
+		jump(from);
+		return sz - from;
+	}
+
+	private static class Page {
+		private final ByteBuffer data;
+		private boolean dirty = false;
+
+		private Page(ByteBuffer data) {
+			this.data = data;
+		}
+	}
+}
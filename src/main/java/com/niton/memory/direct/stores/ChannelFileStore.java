@@ -0,0 +1,276 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.StorageException;
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.managed.BitSystem;
+import com.niton.memory.direct.NegativeIndexException;
+import com.niton.memory.direct.SyncPolicy;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file backed DataStore using positional reads and writes on a {@link FileChannel}.<br>
+ * In contrast to the {@link FileStore} there is no shared file pointer (so multiple threads can read at once)
+ * and the size is kept in memory instead of being asked from the file system.
+ * By default the file grows with every write behind its end. With an extent size the file is grown geometrically in whole extents instead,
+ * so appends mostly land in space that is already reserved.
+ * The bytes between {@link #size()} and the physical file length are removed on {@link #sync()} and {@link #close()},
+ * a preallocating store which is neither synced nor closed counts them as data when it is opened again.<br>
+ * Changes and syncs are mutually exclusive, so a sync of a {@link SyncPolicy} in the background never cuts away data which is
+ * written but not yet counted by {@link #size()}. Reads do not lock
+ */
+public class ChannelFileStore extends DataStore implements Closeable, ChannelStore {
+	/**
+	 * The file grows exactly to the end of each write
+	 */
+	public static final long NO_PREALLOCATION = 0;
+	/**
+	 * A good extent size for preallocating stores, 1 MB
+	 */
+	public static final long DEFAULT_EXTENT_SIZE = 1024 * 1024;
+	/**
+	 * The file grows by at most 64 MB at once (if not more is written)
+	 */
+	public static final long MAX_GROWTH = 64 * 1024 * 1024;
+	private final FileChannel channel;
+	private final long extentSize;
+	private ByteBuffer moveBuffer;
+	private SyncPolicy syncPolicy = SyncPolicy.none();
+	private final ThreadLocal<ByteBuffer> wordBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(8));
+	private volatile long physicalLength;
+	private volatile long length;
+
+	public ChannelFileStore(File f) throws IOException {
+		this(f, NO_PREALLOCATION);
+	}
+
+	public ChannelFileStore(File f, long extentSize) throws IOException {
+		this(FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE), extentSize);
+	}
+
+	public ChannelFileStore(FileChannel channel) throws IOException {
+		this(channel, NO_PREALLOCATION);
+	}
+
+	/**
+	 * @param extentSize the minimum number of bytes the file grows by, {@link #NO_PREALLOCATION} to not reserve space
+	 */
+	public ChannelFileStore(FileChannel channel, long extentSize) throws IOException {
+		if (extentSize < 0)
+			throw new IllegalArgumentException("Extent size must be >= 0");
+		this.channel = channel;
+		this.extentSize = extentSize;
+		this.length = channel.size();
+		this.physicalLength = length;
+	}
+
+	@Override
+	public long size() {
+		return length;
+	}
+
+	public FileChannel getChannel() {
+		return channel;
+	}
+
+	public SyncPolicy getSyncPolicy() {
+		return syncPolicy;
+	}
+
+	/**
+	 * Sets when this store syncs its changes to the disk, {@link SyncPolicy#none()} by default
+	 */
+	public void setSyncPolicy(SyncPolicy syncPolicy) {
+		this.syncPolicy = syncPolicy;
+	}
+
+	@Override
+	protected byte[] innerRead(long from, long to) {
+		byte[] res = new byte[(int) (to - from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected void innerRead(long from, ByteBuffer dst) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		long to = from + dst.remaining();
+		try {
+			//bytes behind the end of the file read as 0
+			int read = 0;
+			while (dst.hasRemaining() && read >= 0)
+				read = channel.read(dst, to - dst.remaining());
+			while (dst.hasRemaining())
+				dst.put((byte) 0);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	@Override
+	protected void innerWrite(byte[] data, long from, long to) {
+		innerWrite(from, ByteBuffer.wrap(data, 0, (int) (to - from)));
+	}
+
+	@Override
+	protected synchronized void innerWrite(long to, ByteBuffer src) {
+		if (to < 0)
+			throw new NegativeIndexException();
+		long end = to + src.remaining();
+		try {
+			ensureCapacity(end);
+			while (src.hasRemaining())
+				channel.write(src, end - src.remaining());
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+		length = Math.max(length, end);
+		syncPolicy.changed(this, end - to);
+	}
+
+	@Override
+	public long readWord(long address, BitSystem bits) {
+		ByteBuffer buffer = wordBuffer.get();
+		buffer.clear();
+		buffer.limit(bits.getBase());
+		innerRead(address, buffer);
+		return bits.get(buffer, 0);
+	}
+
+	@Override
+	public void writeWord(long address, long value, BitSystem bits) {
+		ByteBuffer buffer = wordBuffer.get();
+		buffer.clear();
+		buffer.limit(bits.getBase());
+		bits.put(buffer, 0, value);
+		innerWrite(address, buffer);
+	}
+
+	@Override
+	public synchronized void move(long from, long to, long length) {
+		if (length <= 0 || from == to)
+			return;
+		if (from < 0 || to < 0)
+			throw new NegativeIndexException();
+		try {
+			ensureCapacity(to + length);
+			moveBuffer = FileChannels.moveBuffer(moveBuffer, length);
+			FileChannels.move(channel, moveBuffer, from, to, length);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+		this.length = Math.max(this.length, to + length);
+		syncPolicy.changed(this, length);
+	}
+
+	/**
+	 * Grows the file by whole extents so that at least {@code end} bytes fit into it
+	 */
+	private void ensureCapacity(long end) throws IOException {
+		if (end <= physicalLength)
+			return;
+		if (extentSize == NO_PREALLOCATION) {
+			//the write itself grows the file
+			physicalLength = end;
+			return;
+		}
+		long newLength = FileChannels.grow(physicalLength, end, extentSize, MAX_GROWTH);
+		channel.write(ByteBuffer.allocate(1), newLength - 1);
+		physicalLength = newLength;
+	}
+
+	/**
+	 * Copies from file to file without passing the data through the JVM if the target is a {@link FileStore} or {@link ChannelFileStore}
+	 */
+	@Override
+	public synchronized void copyRange(long from, long to, DataStore target, long targetAddress) {
+		if(!(target instanceof ChannelStore) || target == this || to <= from) {
+			super.copyRange(from, to, target, targetAddress);
+			return;
+		}
+		if(from < 0 || targetAddress < 0)
+			throw new NegativeIndexException();
+		try {
+			FileChannels.transfer(channel, from, to, (ChannelStore) target, targetAddress);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	/**
+	 * Grows the file for a channel to channel transfer into this store
+	 */
+	@Override
+	public synchronized FileChannel reserve(long end) throws IOException {
+		ensureCapacity(end);
+		//a transfer does not write behind the end of the file
+		if (channel.size() < end)
+			channel.write(ByteBuffer.allocate(1), end - 1);
+		return channel;
+	}
+
+	/**
+	 * Updates the size after a channel to channel transfer into this store
+	 */
+	@Override
+	public synchronized void transferred(long to, long count) {
+		length = Math.max(length, to + count);
+		syncPolicy.changed(this, count);
+	}
+
+	/**
+	 * Removes the reserved space behind the logical size and forces all changes to the disk
+	 */
+	@Override
+	public synchronized void sync() {
+		try {
+			//the reserved space would be counted as data when the file is opened again
+			if (physicalLength > length) {
+				channel.truncate(length);
+				physicalLength = length;
+			}
+			channel.force(true);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	/**
+	 * Only changes the logical size. The file keeps its physical length until {@link #close()}.
+	 * The bytes behind the new size are cleared, so they read as 0 when the store grows again
+	 */
+	@Override
+	public synchronized long cut(long from) {
+		long sz = size();
+		if (from < length) {
+			try {
+				channel.truncate(from);
+				if (extentSize == NO_PREALLOCATION)
+					physicalLength = from;
+				else
+					channel.write(ByteBuffer.allocate(1), physicalLength - 1);
+			} catch (IOException e) {
+				throw new StorageException(e);
+			}
+		}
+		length = from;
+		jump(from);
+		syncPolicy.changed(this, 0);
+		return sz - from;
+	}
+
+	/**
+	 * Truncates the file to its logical size and closes it
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		channel.truncate(length);
+		channel.close();
+	}
+}
@@ -0,0 +1,27 @@
+package com.niton.memory.direct.stores;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * A store whose data is a plain range of a {@link FileChannel}, so data can be transferred into it from channel to channel
+ * A transfer holds the monitor of the store, so the store has to synchronize its changes and syncs on itself
+ * @see FileChannels#transfer(FileChannel, long, long, ChannelStore, long)
+ */
+interface ChannelStore {
+	/**
+	 * Makes sure the file is big enough for a transfer
+	 *
+	 * @param end the end of the range that is going to be written
+	 * @return the channel to write into
+	 */
+	FileChannel reserve(long end) throws IOException;
+
+	/**
+	 * Called after bytes were written into the channel directly
+	 *
+	 * @param to    the start of the written range
+	 * @param count the number of bytes written
+	 */
+	void transferred(long to, long count);
+}
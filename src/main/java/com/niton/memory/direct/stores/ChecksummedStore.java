@@ -0,0 +1,241 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.StorageException;
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
+import com.niton.memory.direct.managed.BitSystem;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.stream.LongStream;
+import java.util.zip.CRC32C;
+
+/**
+ * A DataStore that detects corrupted or torn writes of another store using a CRC32C checksum per page.<br>
+ * The checksums are kept in a second store: the page size (4 bytes) followed by one 4 byte checksum per page.
+ * A write only recalculates the checksums of the pages it touches. A page is verified the first time it is read,
+ * reading a corrupted page throws a {@link ChecksumException}. {@link #verify(long, long)} checks a whole range using all cores.<br>
+ * Wrapping a store which already contains data (and an empty checksum store) calculates the checksums of the existing data
+ */
+public class ChecksummedStore extends DataStore {
+	public static final int DEFAULT_PAGE_SIZE = 4 * 1024;
+	private static final BitSystem BITS = BitSystem.X32;
+	private static final int HEADER_SIZE = 4;
+
+	private final DataStore store;
+	private final DataStore checksums;
+	private final int pageSize;
+	/**
+	 * Pages which were verified or written since the store was opened
+	 */
+	private final BitSet verified = new BitSet();
+
+	public ChecksummedStore(DataStore store, DataStore checksums) {
+		this(store, checksums, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * @param store     the store to protect
+	 * @param checksums the store to keep the checksums in
+	 * @param pageSize  the number of bytes covered by one checksum, only used if the checksum store is empty
+	 */
+	public ChecksummedStore(DataStore store, DataStore checksums, int pageSize) {
+		this.store = store;
+		this.checksums = checksums;
+		if (checksums.size() >= HEADER_SIZE) {
+			this.pageSize = (int) checksums.readWord(0, BITS);
+		} else {
+			if (pageSize < 1)
+				throw new IllegalArgumentException("Page size must be > 0");
+			this.pageSize = pageSize;
+			checksums.writeWord(0, pageSize, BITS);
+			long pages = pageCount();
+			for (long page = 0; page < pages; page++)
+				writeChecksum(page, calculate(page));
+		}
+	}
+
+	@Override
+	public long size() {
+		return store.size();
+	}
+
+	public DataStore getStore() {
+		return store;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	private long pageCount() {
+		return (store.size() + pageSize - 1) / pageSize;
+	}
+
+	@Override
+	protected byte[] innerRead(long from, long to) {
+		byte[] res = new byte[(int) (to - from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	/**
+	 * Holds the same lock as writes, so a page is never checked while its data and its checksum are only partially updated
+	 */
+	@Override
+	protected synchronized void innerRead(long from, ByteBuffer dst) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		long to = Math.min(from + dst.remaining(), size());
+		for (long page = from / pageSize; page * pageSize < to; page++)
+			ensureVerified(page);
+		store.read(from, dst);
+	}
+
+	@Override
+	protected void innerWrite(byte[] data, long from, long to) {
+		innerWrite(from, ByteBuffer.wrap(data, 0, (int) (to - from)));
+	}
+
+	@Override
+	protected synchronized void innerWrite(long to, ByteBuffer src) {
+		if (to < 0)
+			throw new NegativeIndexException();
+		long end = to + src.remaining();
+		if (end == to)
+			return;
+		//partially overwritten pages keep some of their old bytes, which must not be covered by a new checksum unchecked
+		if (keepsOldBytes(to / pageSize, to, end))
+			ensureVerified(to / pageSize);
+		if (keepsOldBytes((end - 1) / pageSize, to, end))
+			ensureVerified((end - 1) / pageSize);
+		//when writing behind the end the pages between the old end and the write are filled with 0
+		long firstPage = Math.min(to, size()) / pageSize;
+		ByteBuffer written = src.duplicate();
+		store.write(to, src);
+		long size = size();
+		for (long page = firstPage; page * pageSize < end; page++) {
+			long pageStart = page * pageSize;
+			long pageEnd = Math.min(pageStart + pageSize, size);
+			int checksum;
+			if (pageStart >= to && pageEnd <= end) {
+				//fully overwritten, no need to read the page back
+				ByteBuffer part = written.duplicate();
+				part.position(written.position() + (int) (pageStart - to));
+				part.limit(written.position() + (int) (pageEnd - to));
+				CRC32C crc = new CRC32C();
+				crc.update(part);
+				checksum = (int) crc.getValue();
+			} else {
+				checksum = calculate(page);
+			}
+			writeChecksum(page, checksum);
+			markVerified(page);
+		}
+	}
+
+	/**
+	 * @return true if the page contains bytes which are not overwritten by a write from {@code to} to {@code end}
+	 */
+	private boolean keepsOldBytes(long page, long to, long end) {
+		long pageStart = page * pageSize;
+		long pageEnd = Math.min(pageStart + pageSize, size());
+		return pageStart < to || pageEnd > end;
+	}
+
+	@Override
+	public synchronized long cut(long from) {
+		long sz = size();
+		if (from < sz && from % pageSize != 0)
+			ensureVerified(from / pageSize);
+		store.cut(from);
+		long pages = pageCount();
+		checksums.cut(HEADER_SIZE + pages * BITS.getBase());
+		if (from % pageSize != 0 && from < sz)
+			writeChecksum(pages - 1, calculate(pages - 1));
+		synchronized (verified) {
+			verified.clear((int) Math.min(pages, Integer.MAX_VALUE), Integer.MAX_VALUE);
+		}
+		jump(from);
+		return sz - from;
+	}
+
+	/**
+	 * Checks the checksums of all pages in the range in parallel, writes wait until all pages are checked
+	 *
+	 * @return false if at least one page is corrupted
+	 */
+	@Override
+	public synchronized boolean verify(long from, long to) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		to = Math.min(to, size());
+		if (to <= from)
+			return true;
+		return LongStream.rangeClosed(from / pageSize, (to - 1) / pageSize)
+				.parallel()
+				.allMatch(page -> isVerified(page) || check(page));
+	}
+
+	@Override
+	public void sync() {
+		store.sync();
+		checksums.sync();
+	}
+
+	private void ensureVerified(long page) {
+		if (page >= pageCount() || isVerified(page))
+			return;
+		if (!check(page))
+			throw new ChecksumException("Page " + page + " (" + page * pageSize + " - " + Math.min(size(), (page + 1) * pageSize) + ") is corrupted");
+	}
+
+	/**
+	 * Compares the data of a page with its checksum and marks it as verified if it matches
+	 */
+	private boolean check(long page) {
+		boolean valid = calculate(page) == (int) checksums.readWord(HEADER_SIZE + page * BITS.getBase(), BITS);
+		if (valid)
+			markVerified(page);
+		return valid;
+	}
+
+	private int calculate(long page) {
+		long pageStart = page * pageSize;
+		ByteBuffer data = ByteBuffer.allocate((int) Math.max(0, Math.min(pageSize, size() - pageStart)));
+		store.read(pageStart, data);
+		data.flip();
+		CRC32C crc = new CRC32C();
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+
+	private void writeChecksum(long page, int checksum) {
+		checksums.writeWord(HEADER_SIZE + page * BITS.getBase(), checksum, BITS);
+	}
+
+	private boolean isVerified(long page) {
+		if (page >= Integer.MAX_VALUE)
+			return false;
+		synchronized (verified) {
+			return verified.get((int) page);
+		}
+	}
+
+	private void markVerified(long page) {
+		if (page >= Integer.MAX_VALUE)
+			return;
+		synchronized (verified) {
+			verified.set((int) page);
+		}
+	}
+
+	/**
+	 * Thrown when data is read whose checksum does not match
+	 */
+	public static class ChecksumException extends StorageException {
+		public ChecksumException(String message) {
+			super(message);
+		}
+	}
+}
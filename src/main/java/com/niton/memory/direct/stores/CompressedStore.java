@@ -0,0 +1,303 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
+import com.niton.memory.direct.managed.AllocationMode;
+import com.niton.memory.direct.managed.BitSystem;
+import com.niton.memory.direct.managed.Section;
+import com.niton.memory.direct.managed.VirtualMemory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A DataStore that compresses its data into another DataStore.<br>
+ * The data is split into blocks of a fixed size which are compressed independently (Deflate),
+ * so reading a byte only needs to decompress the block it is in.
+ * The compressed blocks are kept as {@link Section}s of a {@link VirtualMemory} on the wrapped store,
+ * the index of the memory is the block directory. Section 0 holds the block size and the size of the store.
+ * The memory is {@link AllocationMode#RELOCATING relocating}, so a block that compresses worse than before only moves its own section.<br>
+ * The most recently used blocks are kept decompressed in memory, changed blocks are compressed when they are evicted or {@link #flush() flushed}.<br>
+ * Attention! The wrapped store is only up to date after {@link #flush()} or {@link #sync()},
+ * the size of the store is only written to section 0 there, so a store that is reopened without either has its old size.<br>
+ * All access is synchronized since the blocks and the (de)compressor are shared
+ */
+public class CompressedStore extends DataStore {
+	/**
+	 * 64 KB blocks
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+	public static final int DEFAULT_CACHED_BLOCKS = 16;
+	private static final byte DEFLATED = 0;
+	private static final byte STORED = 1;
+	private static final BitSystem BITS = BitSystem.X64;
+
+	private final DataStore store;
+	private final VirtualMemory memory;
+	private final int blockSize;
+	private final int maxBlocks;
+	private final Deflater deflater = new Deflater();
+	private final Inflater inflater = new Inflater();
+	private final byte[] compressBuffer;
+	private final LinkedHashMap<Long, Block> blocks;
+	private long length;
+
+	public CompressedStore(DataStore store) {
+		this(store, DEFAULT_BLOCK_SIZE, DEFAULT_CACHED_BLOCKS);
+	}
+
+	/**
+	 * If the store is empty it is initialized, otherwise the data compressed into it before is used
+	 *
+	 * @param store        the store to write the compressed data to
+	 * @param blockSize    the size of the blocks that are compressed independently, ignored if the store already contains data
+	 * @param cachedBlocks the maximum number of blocks kept decompressed in memory
+	 */
+	public CompressedStore(DataStore store, int blockSize, int cachedBlocks) {
+		if (blockSize < 1)
+			throw new IllegalArgumentException("Block size must be > 0");
+		if (cachedBlocks < 1)
+			throw new IllegalArgumentException("At least one block needs to be cached");
+		this.store = store;
+		this.memory = new VirtualMemory(store, BITS, AllocationMode.RELOCATING);
+		if (store.size() == 0) {
+			memory.initIndex(16);
+			Section meta = memory.createSection(2 * BITS.getBase(), 1);
+			meta.writeWord(0, blockSize, BITS);
+			meta.writeWord(BITS.getBase(), 0, BITS);
+			this.length = 0;
+		} else {
+			memory.readIndex();
+			Section meta = memory.get(0);
+			blockSize = (int) meta.readWord(0, BITS);
+			this.length = meta.readWord(BITS.getBase(), BITS);
+		}
+		this.blockSize = blockSize;
+		this.maxBlocks = cachedBlocks;
+		this.compressBuffer = new byte[blockSize];
+		this.blocks = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+				if (size() <= maxBlocks)
+					return false;
+				writeBack(eldest.getKey(), eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	@Override
+	public long size() {
+		return length;
+	}
+
+	public DataStore getStore() {
+		return store;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * @return the number of compressed bytes of the block, 0 if the block was never written
+	 */
+	public synchronized long compressedSize(long block) {
+		if (block + 1 >= memory.sectionCount())
+			return 0;
+		return memory.get(block + 1).size();
+	}
+
+	@Override
+	protected byte[] innerRead(long from, long to) {
+		byte[] res = new byte[(int) (to - from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected synchronized void innerRead(long from, ByteBuffer dst) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		long address = from;
+		while (dst.hasRemaining()) {
+			int blockOffset = (int) (address % blockSize);
+			int n = Math.min(dst.remaining(), blockSize - blockOffset);
+			dst.put(getBlock(address / blockSize).data, blockOffset, n);
+			address += n;
+		}
+	}
+
+	@Override
+	protected void innerWrite(byte[] data, long from, long to) {
+		innerWrite(from, ByteBuffer.wrap(data, 0, (int) (to - from)));
+	}
+
+	@Override
+	protected synchronized void innerWrite(long to, ByteBuffer src) {
+		if (to < 0)
+			throw new NegativeIndexException();
+		long address = to;
+		//grow first, blocks evicted while writing are only compressed up to the length
+		length = Math.max(length, to + src.remaining());
+		while (src.hasRemaining()) {
+			int blockOffset = (int) (address % blockSize);
+			int n = Math.min(src.remaining(), blockSize - blockOffset);
+			Block block = getBlock(address / blockSize);
+			src.get(block.data, blockOffset, n);
+			block.dirty = true;
+			address += n;
+		}
+	}
+
+	@Override
+	public synchronized long readWord(long address, BitSystem bits) {
+		int blockOffset = (int) (address % blockSize);
+		if (address < 0 || blockOffset + bits.getBase() > blockSize)
+			return super.readWord(address, bits);
+		long value = bits.get(getBlock(address / blockSize).data, blockOffset);
+		return value;
+	}
+
+	@Override
+	public synchronized void writeWord(long address, long value, BitSystem bits) {
+		int blockOffset = (int) (address % blockSize);
+		if (address < 0 || blockOffset + bits.getBase() > blockSize) {
+			super.writeWord(address, value, bits);
+			return;
+		}
+		length = Math.max(length, address + bits.getBase());
+		Block block = getBlock(address / blockSize);
+		bits.put(block.data, blockOffset, value);
+		block.dirty = true;
+	}
+
+	/**
+	 * @return the decompressed block, loaded if necessary
+	 */
+	private Block getBlock(long index) {
+		Block block = blocks.get(index);
+		if (block != null)
+			return block;
+		block = new Block(new byte[blockSize]);
+		if (index + 1 < memory.sectionCount()) {
+			Section section = memory.get(index + 1);
+			//an empty section is a block that was never written (only zeros)
+			if (section.size() > 0)
+				decompress(section.read(0, section.size()), block.data);
+		}
+		blocks.put(index, block);
+		return block;
+	}
+
+	private void decompress(byte[] compressed, byte[] target) {
+		if (compressed[0] == STORED) {
+			System.arraycopy(compressed, 1, target, 0, compressed.length - 1);
+			return;
+		}
+		inflater.reset();
+		inflater.setInput(compressed, 1, compressed.length - 1);
+		try {
+			int read = 0;
+			while (read < target.length && !inflater.finished())
+				read += inflater.inflate(target, read, target.length - read);
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Compressed block is corrupted", e);
+		}
+	}
+
+	private void writeBack(long index, Block block) {
+		if (!block.dirty)
+			return;
+		//blocks before this one are created empty, so the section index stays the block index + 1
+		while (memory.sectionCount() <= index + 1)
+			memory.createSection(sectionBlockSize(), 0);
+		Section section = memory.get(index + 1);
+		deflater.reset();
+		deflater.setInput(block.data);
+		deflater.finish();
+		int compressed = deflater.deflate(compressBuffer);
+		ByteBuffer flag = ByteBuffer.allocate(1);
+		if (deflater.finished()) {
+			section.write(0, flag.put(0, DEFLATED));
+			section.write(1, ByteBuffer.wrap(compressBuffer, 0, compressed));
+			section.cut(compressed + 1);
+		} else {
+			//the data is not compressible, so it is stored as it is
+			section.write(0, flag.put(0, STORED));
+			section.write(1, ByteBuffer.wrap(block.data));
+			section.cut(blockSize + 1);
+		}
+		block.dirty = false;
+	}
+
+	/**
+	 * Compressed blocks grow in steps of a sixteenth of the block size
+	 */
+	private long sectionBlockSize() {
+		return Math.max(16, blockSize / 16);
+	}
+
+	/**
+	 * Compresses all modified blocks and writes the size of the store to the wrapped store.
+	 * This is the only place the size is persisted
+	 */
+	public synchronized void flush() {
+		TreeMap<Long, Block> sorted = new TreeMap<>(blocks);
+		for (Map.Entry<Long, Block> entry : sorted.entrySet())
+			writeBack(entry.getKey(), entry.getValue());
+		memory.get(0).writeWord(BITS.getBase(), length, BITS);
+	}
+
+	/**
+	 * {@link #flush() Flushes} the cache and syncs the wrapped store
+	 */
+	@Override
+	public synchronized void sync() {
+		flush();
+		store.sync();
+	}
+
+	@Override
+	public synchronized long cut(long from) {
+		long sz = size();
+		long keptBlocks = (from + blockSize - 1) / blockSize;
+		blocks.keySet().removeIf(block -> block >= keptBlocks);
+		//the rest of the last block has to read as 0 when the store grows again
+		int lastOffset = (int) (from % blockSize);
+		if (lastOffset != 0) {
+			Block last = getBlock(from / blockSize);
+			Arrays.fill(last.data, lastOffset, blockSize, (byte) 0);
+			last.dirty = true;
+		}
+		if (memory.sectionCount() > keptBlocks + 1) {
+			while (memory.sectionCount() > keptBlocks + 1)
+				memory.getIndex().cut(memory.getIndex().size() - memory.getSectionHeaderSize());
+			memory.readIndex();
+			//sections are not in address order, so the store ends behind the section that ends last
+			long end = memory.getIndex().getEndAddress();
+			for (long i = 0; i < memory.sectionCount(); i++)
+				end = Math.max(end, memory.get(i).getEndAddress());
+			if (store.size() > end)
+				store.cut(end);
+		}
+		length = from;
+		jump(from);
+		return sz - from;
+	}
+
+	private static class Block {
+		private final byte[] data;
+		private boolean dirty = false;
+
+		private Block(byte[] data) {
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,267 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.StorageException;
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file backed DataStore bypassing the page cache of the operating system (O_DIRECT).<br>
+ * All IO is done in whole blocks of the file system through one block aligned direct buffer,
+ * writes that only cover a part of a block read the block first.
+ * Since the operating system does not cache anything this store should be wrapped into a {@link CachedStore},
+ * which keeps the hot pages in memory while the rest of the data does not push anything out of the page cache.<br>
+ * If the JVM or the file system does not support direct IO the file is opened normally, see {@link #isDirect()}.
+ * Writes always fill whole blocks, the bytes behind {@link #size()} are removed on {@link #sync()} and {@link #close()}.
+ * A store which is neither synced nor closed counts them as data when it is opened again
+ */
+public class DirectFileStore extends DataStore implements Closeable {
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+	/**
+	 * The size of the aligned IO buffer (1 MB)
+	 */
+	public static final int IO_BUFFER_SIZE = 1024 * 1024;
+	private static final OpenOption DIRECT = directOption();
+
+	private final FileChannel channel;
+	private final boolean direct;
+	private final int blockSize;
+	private final ByteBuffer ioBuffer;
+	private volatile long length;
+
+	public DirectFileStore(File f) throws IOException {
+		this(f.toPath());
+	}
+
+	public DirectFileStore(Path path) throws IOException {
+		this(path, blockSize(path));
+	}
+
+	/**
+	 * @param path      the file to use
+	 * @param blockSize the block size of the file system, all IO is aligned to it
+	 */
+	public DirectFileStore(Path path, int blockSize) throws IOException {
+		if (blockSize < 1 || Integer.bitCount(blockSize) != 1)
+			throw new IllegalArgumentException("Block size must be a power of 2");
+		FileChannel opened = null;
+		if (DIRECT != null) {
+			try {
+				opened = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, DIRECT);
+			} catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+				//the file system does not support direct IO
+				opened = null;
+			}
+		}
+		this.direct = opened != null;
+		if (opened == null)
+			opened = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.channel = opened;
+		this.blockSize = blockSize;
+		int bufferSize = Math.max(blockSize, IO_BUFFER_SIZE - IO_BUFFER_SIZE % blockSize);
+		this.ioBuffer = ByteBuffer.allocateDirect(bufferSize + blockSize).alignedSlice(blockSize);
+		this.length = channel.size();
+	}
+
+	/**
+	 * @return true if the file was opened for direct IO, false if the page cache is used
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	@Override
+	public long size() {
+		return length;
+	}
+
+	@Override
+	protected byte[] innerRead(long from, long to) {
+		byte[] res = new byte[(int) (to - from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected synchronized void innerRead(long from, ByteBuffer dst) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		try {
+			long address = from;
+			while (dst.hasRemaining()) {
+				long chunkStart = address - address % blockSize;
+				int offset = (int) (address - chunkStart);
+				int n = Math.min(dst.remaining(), ioBuffer.capacity() - offset);
+				int chunkLength = align(offset + n);
+				readBlocks(chunkStart, 0, chunkLength);
+				ByteBuffer view = ioBuffer.duplicate();
+				view.position(offset);
+				view.limit(offset + n);
+				dst.put(view);
+				address += n;
+			}
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	@Override
+	protected void innerWrite(byte[] data, long from, long to) {
+		innerWrite(from, ByteBuffer.wrap(data, 0, (int) (to - from)));
+	}
+
+	@Override
+	protected synchronized void innerWrite(long to, ByteBuffer src) {
+		if (to < 0)
+			throw new NegativeIndexException();
+		long end = to + src.remaining();
+		try {
+			long address = to;
+			while (src.hasRemaining()) {
+				long chunkStart = address - address % blockSize;
+				int offset = (int) (address - chunkStart);
+				int n = Math.min(src.remaining(), ioBuffer.capacity() - offset);
+				int chunkLength = align(offset + n);
+				//blocks which are only partially overwritten need their old content
+				if (offset != 0)
+					readBlocks(chunkStart, 0, blockSize);
+				if ((offset + n) % blockSize != 0 && (chunkLength > blockSize || offset == 0))
+					readBlocks(chunkStart + chunkLength - blockSize, chunkLength - blockSize, blockSize);
+				ByteBuffer view = ioBuffer.duplicate();
+				view.position(offset);
+				ByteBuffer part = src.duplicate();
+				part.limit(part.position() + n);
+				view.put(part);
+				src.position(src.position() + n);
+				view.position(0);
+				view.limit(chunkLength);
+				while (view.hasRemaining())
+					channel.write(view, chunkStart + view.position());
+				address += n;
+			}
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+		length = Math.max(length, end);
+	}
+
+	/**
+	 * Reads whole blocks into the IO buffer, bytes behind the end of the file read as 0
+	 *
+	 * @param position     the (aligned) position in the file
+	 * @param bufferOffset the (aligned) position in the IO buffer
+	 * @param count        the number of bytes (multiple of the block size)
+	 */
+	private void readBlocks(long position, int bufferOffset, int count) throws IOException {
+		ByteBuffer view = ioBuffer.duplicate();
+		view.position(bufferOffset);
+		view.limit(bufferOffset + count);
+		int read = 0;
+		while (view.hasRemaining() && read >= 0) {
+			read = channel.read(view, position + view.position() - bufferOffset);
+			//only the end of a synced or closed file is not aligned, reading on from there would be unaligned
+			if ((view.position() - bufferOffset) % blockSize != 0)
+				break;
+		}
+		while (view.hasRemaining())
+			view.put((byte) 0);
+	}
+
+	private int align(int size) {
+		return (size + blockSize - 1) / blockSize * blockSize;
+	}
+
+	private long align(long size) {
+		return (size + blockSize - 1) / blockSize * blockSize;
+	}
+
+	/**
+	 * Removes the padding of the last block and forces all changes to the disk
+	 */
+	@Override
+	public synchronized void sync() {
+		try {
+			//the padding would be counted as data when the file is opened again
+			if (channel.size() > length)
+				channel.truncate(length);
+			channel.force(true);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	/**
+	 * Truncates the file behind the block holding the new end and clears the rest of that block,
+	 * so the cut bytes read as 0 when the store grows again
+	 */
+	@Override
+	public synchronized long cut(long from) {
+		long sz = size();
+		if (from < sz) {
+			long aligned = align(from);
+			try {
+				if (channel.size() > aligned)
+					channel.truncate(aligned);
+			} catch (IOException e) {
+				throw new StorageException(e);
+			}
+			if (aligned > from)
+				innerWrite(from, ByteBuffer.allocate((int) (aligned - from)));
+		}
+		length = from;
+		jump(from);
+		return sz - from;
+	}
+
+	/**
+	 * Truncates the file to its logical size and closes it
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		channel.truncate(length);
+		channel.close();
+	}
+
+	/**
+	 * @return {@code ExtendedOpenOption.DIRECT} or null if the JVM does not support it (it was added in Java 10)
+	 */
+	private static OpenOption directOption() {
+		try {
+			return (OpenOption) Class.forName("com.sun.nio.file.ExtendedOpenOption").getField("DIRECT").get(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the block size of the file system containing the path or {@link #DEFAULT_BLOCK_SIZE} if it is unknown
+	 */
+	private static int blockSize(Path path) {
+		try {
+			Path existing = path.toAbsolutePath();
+			while (existing != null && !Files.exists(existing))
+				existing = existing.getParent();
+			if (existing == null)
+				return DEFAULT_BLOCK_SIZE;
+			//FileStore.getBlockSize() was added in Java 10
+			Object fileStore = Files.getFileStore(existing);
+			long size = (long) java.nio.file.FileStore.class.getMethod("getBlockSize").invoke(fileStore);
+			return size > 0 && size <= Integer.MAX_VALUE && Long.bitCount(size) == 1 ? (int) size : DEFAULT_BLOCK_SIZE;
+		} catch (IOException | ReflectiveOperationException | RuntimeException e) {
+			return DEFAULT_BLOCK_SIZE;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
+import com.niton.memory.direct.managed.BitSystem;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DataStore keeping its data off-heap in direct ByteBuffers.<br>
+ * The memory is allocated in chunks when needed, so the store is not limited to Integer.MAX_VALUE bytes
+ * and the data does not put pressure on the garbage collector.
+ * Chunks which are not needed anymore after a {@link #cut(long)} are released immediately.
+ */
+public class DirectStore extends DataStore implements Closeable {
+	/**
+	 * 1 MB chunks
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+	/**
+	 * The size of the chunks data is moved in (1 MB)
+	 */
+	public static final int MOVE_CHUNK_SIZE = 1024 * 1024;
+	private final int chunkSize;
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private long length = 0;
+
+	public DirectStore() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	public DirectStore(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("Chunk size must be > 0");
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public long size() {
+		return length;
+	}
+
+	/**
+	 * @return the number of bytes currently allocated
+	 */
+	public long capacity() {
+		return (long) chunks.size() * chunkSize;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	@Override
+	protected byte[] innerRead(long from, long to) {
+		byte[] res = new byte[(int) (to - from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected void innerRead(long from, ByteBuffer dst) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		long to = from + dst.remaining();
+		//not allocated memory reads as 0
+		int allocated = (int) (Math.min(to, capacity()) - Math.min(from, capacity()));
+		ByteBuffer target = dst.duplicate();
+		target.limit(target.position() + allocated);
+		copy(from, target, false);
+		dst.position(dst.position() + allocated);
+		while (dst.hasRemaining())
+			dst.put((byte) 0);
+	}
+
+	@Override
+	protected void innerWrite(byte[] data, long from, long to) {
+		innerWrite(from, ByteBuffer.wrap(data, 0, (int) (to - from)));
+	}
+
+	@Override
+	protected void innerWrite(long to, ByteBuffer src) {
+		if (to < 0)
+			throw new NegativeIndexException();
+		long end = to + src.remaining();
+		while (capacity() < end)
+			chunks.add(ByteBuffer.allocateDirect(chunkSize));
+		copy(to, src, true);
+		length = Math.max(length, end);
+	}
+
+	@Override
+	public long readWord(long address, BitSystem bits) {
+		int chunkOffset = (int) (address % chunkSize);
+		long end = address + bits.getBase();
+		if (address < 0 || end > capacity() || chunkOffset + bits.getBase() > chunkSize)
+			return super.readWord(address, bits);
+		return bits.get(chunks.get((int) (address / chunkSize)), chunkOffset);
+	}
+
+	@Override
+	public void writeWord(long address, long value, BitSystem bits) {
+		int chunkOffset = (int) (address % chunkSize);
+		long end = address + bits.getBase();
+		if (address < 0 || end > capacity() || chunkOffset + bits.getBase() > chunkSize) {
+			super.writeWord(address, value, bits);
+			return;
+		}
+		bits.put(chunks.get((int) (address / chunkSize)), chunkOffset, value);
+		length = Math.max(length, end);
+	}
+
+	private void copy(long address, ByteBuffer data, boolean write) {
+		while (data.hasRemaining()) {
+			int chunkOffset = (int) (address % chunkSize);
+			int n = Math.min(data.remaining(), chunkSize - chunkOffset);
+			ByteBuffer view = chunks.get((int) (address / chunkSize)).duplicate();
+			view.position(chunkOffset);
+			view.limit(chunkOffset + n);
+			if (write) {
+				ByteBuffer part = data.duplicate();
+				part.limit(part.position() + n);
+				view.put(part);
+				data.position(data.position() + n);
+			} else {
+				data.put(view);
+			}
+			address += n;
+		}
+	}
+
+	/**
+	 * Moving is a plain memory copy, so it is done in big chunks
+	 */
+	@Override
+	protected int moveChunkSize() {
+		return MOVE_CHUNK_SIZE;
+	}
+
+	@Override
+	public long cut(long from) {
+		long sz = size();
+		length = from;
+		//cutting behind the end only grows the store, the bytes behind the old end are 0 already
+		if (from < sz) {
+			long neededChunks = (from + chunkSize - 1) / chunkSize;
+			while (chunks.size() > neededChunks)
+				release(chunks.remove(chunks.size() - 1));
+			//the remaining bytes of the chunk holding the new end need to read as 0 when the store grows again
+			int lastOffset = (int) (from % chunkSize);
+			if (lastOffset != 0 && from / chunkSize < chunks.size())
+				copy(from, ByteBuffer.allocate(chunkSize - lastOffset), true);
+		}
+		jump(from);
+		return sz - from;
+	}
+
+	/**
+	 * Releases all memory of this store
+	 */
+	@Override
+	public void close() {
+		cut(0);
+	}
+
+	/**
+	 * Frees the native memory of a direct buffer without waiting for the garbage collector.
+	 * If the JVM does not allow this the buffer is left to the garbage collector
+	 */
+	private static void release(ByteBuffer buffer) {
+		if (INVOKE_CLEANER == null)
+			return;
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, buffer);
+		} catch (ReflectiveOperationException e) {
+			//the gc frees the buffer eventually
+		}
+	}
+
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafe = theUnsafe.get(null);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			unsafe = null;
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+}
@@ -0,0 +1,114 @@
+package com.niton.memory.direct.stores;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Helper methods shared by the {@link FileChannel} based stores
+ */
+final class FileChannels {
+	/**
+	 * The size of the buffer used to move data inside a file
+	 */
+	static final int MOVE_BUFFER_SIZE = 1024 * 1024;
+
+	private FileChannels() {
+	}
+
+	/**
+	 * Moves a block of data inside a file using positional reads and writes. The ranges may overlap
+	 *
+	 * @param channel the file
+	 * @param buffer  the buffer to move the data through, the bigger the fewer syscalls are needed
+	 * @param from    the start of the data to move
+	 * @param to      the target address
+	 * @param length  the number of bytes to move
+	 */
+	static void move(FileChannel channel, ByteBuffer buffer, long from, long to, long length) throws IOException {
+		//when moving towards the end the last chunk has to be moved first, so it is not overwritten
+		boolean startAtEnd = to > from;
+		long done = 0;
+		while (done < length) {
+			int chunk = (int) Math.min(buffer.capacity(), length - done);
+			long offset = startAtEnd ? length - done - chunk : done;
+			buffer.clear();
+			buffer.limit(chunk);
+			int read = 0;
+			while (buffer.hasRemaining() && read >= 0)
+				read = channel.read(buffer, from + offset + buffer.position());
+			//bytes behind the end of the file are moved as 0
+			while (buffer.hasRemaining())
+				buffer.put((byte) 0);
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer, to + offset + buffer.position());
+			done += chunk;
+		}
+	}
+
+	/**
+	 * Computes the new physical length of a growing file. The file grows geometrically (by half of its size),
+	 * so appending many small pieces only needs a few (metadata) changes of the file length
+	 *
+	 * @param capacity  the current physical length
+	 * @param end       the number of bytes that need to fit into the file
+	 * @param minGrowth the minimum number of bytes to grow, the result is a multiple of it
+	 * @param maxGrowth the maximum number of bytes to grow (if the end is not further away)
+	 * @return the new physical length
+	 */
+	static long grow(long capacity, long end, long minGrowth, long maxGrowth) {
+		long growth = Math.max(minGrowth, Math.min(capacity / 2, maxGrowth));
+		long newCapacity = Math.max(end, capacity + growth);
+		return (newCapacity + minGrowth - 1) / minGrowth * minGrowth;
+	}
+
+	/**
+	 * Copies a range of a file into a {@link ChannelStore} using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+	 * which lets the operating system copy the data without passing it through the JVM.
+	 * Bytes behind the end of the source file are copied as 0
+	 *
+	 * @param source        the file to copy from
+	 * @param from          the start of the range (inclusive)
+	 * @param to            the end of the range (exclusive)
+	 * @param target        the store to copy into
+	 * @param targetAddress the address in the target to copy to
+	 */
+	static void transfer(FileChannel source, long from, long to, ChannelStore target, long targetAddress) throws IOException {
+		//a sync of the target must not cut away the range before it is counted as data
+		synchronized (target) {
+			long count = to - from;
+			FileChannel channel = target.reserve(targetAddress + count);
+			long available = Math.max(0, Math.min(to, source.size()) - from);
+			long done = 0;
+			//the target position is shared, so transfers into the same store must not run at the same time
+			synchronized (channel) {
+				while (done < available) {
+					channel.position(targetAddress + done);
+					long transferred = source.transferTo(from + done, available - done, channel);
+					if (transferred <= 0)
+						break;
+					done += transferred;
+				}
+			}
+			ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(count - done, MOVE_BUFFER_SIZE));
+			while (done < count) {
+				zeros.clear();
+				zeros.limit((int) Math.min(zeros.capacity(), count - done));
+				while (zeros.hasRemaining())
+					done += channel.write(zeros, targetAddress + done);
+			}
+			target.transferred(targetAddress, count);
+		}
+	}
+
+	/**
+	 * @return a buffer for {@link #move(FileChannel, ByteBuffer, long, long, long)}, reusing the given one if possible
+	 */
+	static ByteBuffer moveBuffer(ByteBuffer current, long length) {
+		int size = (int) Math.min(length, MOVE_BUFFER_SIZE);
+		if (current != null && current.capacity() >= size)
+			return current;
+		return ByteBuffer.allocateDirect(Math.max(size, current == null ? 0 : current.capacity()));
+	}
+}
@@ -1,40 +1,114 @@
 package com.niton.memory.direct.stores;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import com.niton.StorageException;
 import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
+import com.niton.memory.direct.SyncPolicy;
+import com.niton.memory.direct.managed.BitSystem;
 
-public class FileStore extends DataStore {
+/**
+ * A DataStore writing into a file.<br>
+ * By default the file grows with every write behind its end. With a minimum growth (eg. {@link #DEFAULT_MIN_GROWTH})
+ * the file is grown in big steps (geometrically) instead, so appends mostly land in space that is already reserved.
+ * The logical size is kept in memory, the reserved bytes behind {@link #size()} are removed on {@link #sync()} and {@link #close()}.
+ * A preallocating store which is neither synced nor closed counts the reserved bytes as data when it is opened again.<br>
+ * Changes and syncs are mutually exclusive, so a sync of a {@link SyncPolicy} in the background never cuts away data which is
+ * written but not yet counted by {@link #size()}
+ */
+public class FileStore extends DataStore implements Closeable, ChannelStore {
+	/**
+	 * The file grows exactly to the end of each write
+	 */
+	public static final long NO_PREALLOCATION = 0;
+	/**
+	 * A good minimum growth for preallocating stores, 64 KB
+	 */
+	public static final long DEFAULT_MIN_GROWTH = 64 * 1024;
+	/**
+	 * The file grows by at most 64 MB at once (if not more is written)
+	 */
+	public static final long MAX_GROWTH = 64 * 1024 * 1024;
 	private final RandomAccessFile file;
+	private final long minGrowth;
+	private volatile long capacity;
+	private volatile long length;
+	private ByteBuffer moveBuffer;
+	private SyncPolicy syncPolicy = SyncPolicy.none();
+	private final ThreadLocal<ByteBuffer> wordBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(8));
 
 	public FileStore(RandomAccessFile file) {
-		this.file = file;
+		this(file, NO_PREALLOCATION);
 	}
 	public FileStore(File f) throws FileNotFoundException {
-		this.file = new RandomAccessFile(f,"rw");
+		this(new RandomAccessFile(f,"rw"));
 	}
 
-	@Override
-	public long size() {
+	/**
+	 * @param file the file to use
+	 * @param minGrowth the minimum number of bytes the file grows by, {@link #NO_PREALLOCATION} to not reserve space
+	 */
+	public FileStore(RandomAccessFile file, long minGrowth) {
+		if(minGrowth < 0)
+			throw new IllegalArgumentException("Growth must be >= 0");
+		this.file = file;
+		this.minGrowth = minGrowth;
 		try {
-			return file.length();
+			this.length = file.length();
 		} catch (IOException e) {
-			return -1;
+			throw new StorageException(e);
 		}
+		this.capacity = length;
+	}
+
+	public SyncPolicy getSyncPolicy() {
+		return syncPolicy;
+	}
+
+	/**
+	 * Sets when this store syncs its changes to the disk, {@link SyncPolicy#none()} by default
+	 */
+	public void setSyncPolicy(SyncPolicy syncPolicy) {
+		this.syncPolicy = syncPolicy;
+	}
+
+	@Override
+	public long size() {
+		return length;
+	}
+
+	/**
+	 * @return the physical length of the file
+	 */
+	public long capacity() {
+		return capacity;
 	}
 
 	@Override
 	protected byte[] innerRead(long from, long to) {
+		byte[] res = new byte[(int) (to-from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected void innerRead(long from, ByteBuffer dst) {
 		try {
-			byte[] res = new byte[(int) (to-from)];
-			file.seek(from);
-			file.read(res,0, (int) (to-from));
-			jump(file.getFilePointer());
-			return res;
+			long to = from + dst.remaining();
+			FileChannel channel = file.getChannel();
+			int read = 0;
+			//bytes behind the end of the file read as 0
+			while (dst.hasRemaining() && read >= 0)
+				read = channel.read(dst, to - dst.remaining());
+			while (dst.hasRemaining())
+				dst.put((byte) 0);
 		} catch (IOException e) {
 			throw new StorageException(e);
 		}
@@ -42,23 +116,161 @@ public class FileStore extends DataStore {
 
 	@Override
 	protected void innerWrite(byte[] data, long from, long to) {
+		innerWrite(from, ByteBuffer.wrap(data,0, (int) (to-from)));
+	}
+
+	@Override
+	protected synchronized void innerWrite(long to, ByteBuffer src) {
 		try {
-			file.seek(from);
-			file.write(data,0, (int) (to-from));
-			jump(file.getFilePointer());
+			long end = to + src.remaining();
+			FileChannel channel = file.getChannel();
+			long written = src.remaining();
+			ensureCapacity(end);
+			while (src.hasRemaining())
+				channel.write(src, end - src.remaining());
+			length = Math.max(length, end);
+			syncPolicy.changed(this, written);
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new StorageException(e);
 		}
 	}
 
-	public long cut(long from) {
+	@Override
+	public long readWord(long address, BitSystem bits) {
+		ByteBuffer buffer = wordBuffer.get();
+		buffer.clear();
+		buffer.limit(bits.getBase());
+		innerRead(address, buffer);
+		return bits.get(buffer, 0);
+	}
+
+	@Override
+	public void writeWord(long address, long value, BitSystem bits) {
+		ByteBuffer buffer = wordBuffer.get();
+		buffer.clear();
+		buffer.limit(bits.getBase());
+		bits.put(buffer, 0, value);
+		innerWrite(address, buffer);
+	}
+
+	@Override
+	public synchronized void move(long from, long to, long length) {
+		if (length <= 0 || from == to)
+			return;
+		if (from < 0 || to < 0)
+			throw new NegativeIndexException();
+		try {
+			ensureCapacity(to + length);
+			moveBuffer = FileChannels.moveBuffer(moveBuffer, length);
+			FileChannels.move(file.getChannel(), moveBuffer, from, to, length);
+			this.length = Math.max(this.length, to + length);
+			syncPolicy.changed(this, length);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	/**
+	 * Copies from file to file without passing the data through the JVM if the target is a {@link FileStore} or {@link ChannelFileStore}
+	 */
+	@Override
+	public synchronized void copyRange(long from, long to, DataStore target, long targetAddress) {
+		if(!(target instanceof ChannelStore) || target == this || to <= from) {
+			super.copyRange(from, to, target, targetAddress);
+			return;
+		}
+		if(from < 0 || targetAddress < 0)
+			throw new NegativeIndexException();
+		try {
+			FileChannels.transfer(file.getChannel(), from, to, (ChannelStore) target, targetAddress);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	/**
+	 * Grows the file for a channel to channel transfer into this store
+	 */
+	@Override
+	public synchronized FileChannel reserve(long end) throws IOException {
+		ensureCapacity(end);
+		//a transfer does not write behind the end of the file
+		if(file.length() < end)
+			file.setLength(end);
+		return file.getChannel();
+	}
+
+	/**
+	 * Updates the size after a channel to channel transfer into this store
+	 */
+	@Override
+	public synchronized void transferred(long to, long count) {
+		length = Math.max(length, to + count);
+		syncPolicy.changed(this, count);
+	}
+
+	/**
+	 * Removes the reserved space behind the logical size and forces all changes to the disk
+	 */
+	@Override
+	public synchronized void sync() {
+		try {
+			//the reserved space would be counted as data when the file is opened again
+			if(capacity > length) {
+				file.setLength(length);
+				capacity = length;
+			}
+			file.getChannel().force(true);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	/**
+	 * Grows the file so that at least {@code end} bytes fit into it
+	 */
+	private void ensureCapacity(long end) throws IOException {
+		if(end <= capacity)
+			return;
+		if(minGrowth == NO_PREALLOCATION) {
+			//the write itself grows the file
+			capacity = end;
+			return;
+		}
+		capacity = FileChannels.grow(capacity, end, minGrowth, MAX_GROWTH);
+		file.setLength(capacity);
+	}
+
+	/**
+	 * Only changes the logical size, the reserved space is kept.
+	 * The bytes behind the new size are cleared, so they read as 0 when the store grows again
+	 */
+	@Override
+	public synchronized long cut(long from) {
 		try {
 			long sz= size();
-			file.setLength(from);
+			if(from < length) {
+				file.setLength(from);
+				if(minGrowth == NO_PREALLOCATION)
+					capacity = from;
+				else
+					file.setLength(capacity);
+			}
+			length = from;
 			jump(from);
+			syncPolicy.changed(this, 0);
 			return (sz-from);
 		} catch (IOException e) {
 			throw new StorageException(e);
 		}
 	}
+
+	/**
+	 * Removes the reserved space behind the logical size and closes the file
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		file.setLength(length);
+		file.close();
+	}
 }
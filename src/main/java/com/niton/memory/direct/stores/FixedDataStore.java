@@ -4,6 +4,8 @@ import com.niton.memory.direct.DataStore;
 import com.niton.memory.direct.NegativeIndexException;
 import com.niton.memory.direct.managed.*;
 
+import java.nio.ByteBuffer;
+
 /**
  * A Datastore with NON variable size
  */
@@ -25,8 +27,25 @@ public abstract class FixedDataStore extends DataStore {
 		return fixedInnerRead(from,to);
 	}
 
+	@Override
+	protected void innerRead(long from, ByteBuffer dst) {
+		long to = from + dst.remaining();
+		if(from > maxLength() || to > maxLength())
+			throw new Section.SegmentationFault(to+" is outside the readable area (0-"+maxLength()+")");
+		if(from < 0)
+			throw new NegativeIndexException();
+		fixedInnerRead(from,dst);
+	}
+
 	protected abstract byte[] fixedInnerRead(long from, long to);
 
+	/**
+	 * Reads into a buffer, the bounds are already checked. The default implementation uses {@link #fixedInnerRead(long, long)}
+	 */
+	protected void fixedInnerRead(long from, ByteBuffer dst) {
+		dst.put(fixedInnerRead(from,from+dst.remaining()));
+	}
+
 	@Override
 	protected void innerWrite(byte[] data, long from, long to) {
 		if(to > maxLength())
@@ -37,9 +56,83 @@ public abstract class FixedDataStore extends DataStore {
 		end = Math.max(to,end);
 	}
 
+	@Override
+	protected void innerWrite(long to, ByteBuffer src) {
+		long end = to + src.remaining();
+		if(end > maxLength())
+			throw new MemoryOverflowException(maxLength(), end);
+		if(to < 0)
+			throw new NegativeIndexException();
+		fixedInnerWrite(to,src);
+		this.end = Math.max(end,this.end);
+	}
+
+	@Override
+	public long readWord(long address, BitSystem bits) {
+		long to = address + bits.getBase();
+		if(address > maxLength() || to > maxLength())
+			throw new Section.SegmentationFault(to+" is outside the readable area (0-"+maxLength()+")");
+		if(address < 0)
+			throw new NegativeIndexException();
+		return fixedReadWord(address,bits);
+	}
+
+	/**
+	 * Reads a word, the bounds are already checked. The default implementation uses {@link #fixedInnerRead(long, ByteBuffer)}
+	 */
+	protected long fixedReadWord(long address, BitSystem bits) {
+		return super.readWord(address,bits);
+	}
+
+	@Override
+	public void writeWord(long address, long value, BitSystem bits) {
+		long to = address + bits.getBase();
+		if(to > maxLength())
+			throw new MemoryOverflowException(maxLength(), to);
+		if(address < 0)
+			throw new NegativeIndexException();
+		fixedWriteWord(address,value,bits);
+		end = Math.max(to,end);
+	}
+
+	/**
+	 * Writes a word, the bounds are already checked. The default implementation uses {@link #fixedInnerWrite(long, ByteBuffer)}
+	 */
+	protected void fixedWriteWord(long address, long value, BitSystem bits) {
+		ByteBuffer buffer = ByteBuffer.allocate(bits.getBase());
+		bits.put(buffer,0,value);
+		fixedInnerWrite(address,buffer);
+	}
+
+	@Override
+	public void move(long from, long to, long length) {
+		if(length <= 0 || from == to)
+			return;
+		if(from + length > maxLength())
+			throw new Section.SegmentationFault((from+length)+" is outside the readable area (0-"+maxLength()+")");
+		if(to + length > maxLength())
+			throw new MemoryOverflowException(maxLength(), to + length);
+		if(from < 0 || to < 0)
+			throw new NegativeIndexException();
+		fixedMove(from,to,length);
+		end = Math.max(to+length,end);
+	}
+
+	/**
+	 * Moves data inside the store, the bounds are already checked. The default implementation copies the data in chunks
+	 * @see DataStore#move(long, long, long)
+	 */
+	protected void fixedMove(long from, long to, long length) {
+		super.move(from,to,length);
+	}
+
+	/**
+	 * Clears the cut bytes, so they read as 0 when the store grows again
+	 */
 	@Override
 	public long cut(long from) {
 		long oldEnd = end;
+		clear(from,oldEnd);
 		end = from;
 		jump(end);
 		return oldEnd-from;
@@ -47,6 +140,15 @@ public abstract class FixedDataStore extends DataStore {
 
 	protected abstract void fixedInnerWrite(byte[] data, long from, long to);
 
+	/**
+	 * Writes a buffer, the bounds are already checked. The default implementation uses {@link #fixedInnerWrite(byte[], long, long)}
+	 */
+	protected void fixedInnerWrite(long to, ByteBuffer src) {
+		byte[] data = new byte[src.remaining()];
+		src.get(data);
+		fixedInnerWrite(data,to,to+data.length);
+	}
+
 
 	public static class MemoryOverflowException extends RuntimeException{
 		public MemoryOverflowException(long maxSize,long writePosition) {
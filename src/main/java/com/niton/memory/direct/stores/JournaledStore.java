@@ -0,0 +1,378 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.StorageException;
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32C;
+
+/**
+ * A DataStore that makes the writes to another store crash safe using a write ahead log (journal).<br>
+ * Every change is appended to the log and kept in memory (in pages), the wrapped (main) store is not touched.
+ * {@link #commit()} forces the log to the disk, if multiple threads commit at the same time they share one sync of the log (group commit).
+ * A checkpoint writes the changed pages to the main store, syncs it and empties the log. This is done in the background when the log
+ * grows bigger than the checkpoint size or by calling {@link #checkpoint()}.<br>
+ * When the store is opened the committed part of the log is replayed onto the main store,
+ * changes that were not committed when the process crashed are discarded.<br>
+ * To make a {@link com.niton.memory.direct.managed.VirtualMemory} crash safe, create it on top of a JournaledStore
+ */
+public class JournaledStore extends DataStore implements Closeable {
+	public static final int DEFAULT_PAGE_SIZE = 4 * 1024;
+	/**
+	 * 16 MB of log
+	 */
+	public static final long DEFAULT_CHECKPOINT_SIZE = 16 * 1024 * 1024;
+	static final byte WRITE = 1;
+	private static final byte CUT = 2;
+	static final byte COMMIT = 3;
+	/**
+	 * type, address, length
+	 */
+	private static final int HEADER_SIZE = 1 + 8 + 4;
+	private static final int CRC_SIZE = 4;
+
+	private final DataStore main;
+	private final DataStore log;
+	private final int pageSize;
+	private final long checkpointSize;
+	private final Map<Long, byte[]> pages = new HashMap<>();
+	private final CRC32C crc = new CRC32C();
+	private final Object syncLock = new Object();
+	private ExecutorService checkpointer;
+	private boolean checkpointScheduled = false;
+	private RuntimeException checkpointFailure;
+	private long length;
+	/**
+	 * The data of the main store behind this address is cut away
+	 */
+	private long cutFloor;
+	/**
+	 * The number of log bytes before the current log (the log is emptied by checkpoints)
+	 */
+	private long logBase = 0;
+	private long logEnd = 0;
+	private boolean uncommitted = false;
+	/**
+	 * Log position (including {@link #logBase}) up to which the log is known to be on the disk, guarded by {@link #syncLock}
+	 */
+	private long synced = 0;
+
+	public JournaledStore(DataStore main, DataStore log) {
+		this(main, log, DEFAULT_PAGE_SIZE, DEFAULT_CHECKPOINT_SIZE);
+	}
+
+	/**
+	 * Replays the committed part of the log onto the main store if there is one
+	 *
+	 * @param main           the store to protect
+	 * @param log            the store to write the log to, should be a persistent store on its own
+	 * @param pageSize       the size of the pages changes are collected in
+	 * @param checkpointSize the size of the log that triggers a checkpoint in the background, 0 to only checkpoint manually
+	 */
+	public JournaledStore(DataStore main, DataStore log, int pageSize, long checkpointSize) {
+		if (pageSize < 1)
+			throw new IllegalArgumentException("Page size must be > 0");
+		if (checkpointSize < 0)
+			throw new IllegalArgumentException("Checkpoint size must be >= 0");
+		this.main = main;
+		this.log = log;
+		this.pageSize = pageSize;
+		this.checkpointSize = checkpointSize;
+		recover();
+		this.length = main.size();
+		this.cutFloor = length;
+	}
+
+	@Override
+	public long size() {
+		return length;
+	}
+
+	public DataStore getMain() {
+		return main;
+	}
+
+	public DataStore getLog() {
+		return log;
+	}
+
+	@Override
+	protected byte[] innerRead(long from, long to) {
+		byte[] res = new byte[(int) (to - from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected synchronized void innerRead(long from, ByteBuffer dst) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		long address = from;
+		while (dst.hasRemaining()) {
+			long page = address / pageSize;
+			int pageOffset = (int) (address % pageSize);
+			int n = Math.min(dst.remaining(), pageSize - pageOffset);
+			byte[] changed = pages.get(page);
+			if (changed != null) {
+				dst.put(changed, pageOffset, n);
+			} else {
+				ByteBuffer part = dst.duplicate();
+				part.limit(part.position() + n);
+				readMain(address, part);
+				dst.position(dst.position() + n);
+			}
+			address += n;
+		}
+	}
+
+	@Override
+	protected void innerWrite(byte[] data, long from, long to) {
+		innerWrite(from, ByteBuffer.wrap(data, 0, (int) (to - from)));
+	}
+
+	@Override
+	protected synchronized void innerWrite(long to, ByteBuffer src) {
+		if (to < 0)
+			throw new NegativeIndexException();
+		append(WRITE, to, src.duplicate());
+		long address = to;
+		while (src.hasRemaining()) {
+			int pageOffset = (int) (address % pageSize);
+			int n = Math.min(src.remaining(), pageSize - pageOffset);
+			src.get(getPage(address / pageSize), pageOffset, n);
+			address += n;
+		}
+		length = Math.max(length, address);
+	}
+
+	/**
+	 * Reads from the main store, bytes which are cut away or behind its end read as 0
+	 */
+	private void readMain(long from, ByteBuffer dst) {
+		long valid = Math.min(main.size(), cutFloor);
+		int n = (int) Math.max(0, Math.min(dst.remaining(), valid - from));
+		if (n > 0) {
+			ByteBuffer part = dst.duplicate();
+			part.limit(part.position() + n);
+			main.read(from, part);
+			dst.position(dst.position() + n);
+		}
+		while (dst.hasRemaining())
+			dst.put((byte) 0);
+	}
+
+	private byte[] getPage(long page) {
+		byte[] data = pages.get(page);
+		if (data == null) {
+			data = new byte[pageSize];
+			readMain(page * pageSize, ByteBuffer.wrap(data));
+			pages.put(page, data);
+		}
+		return data;
+	}
+
+	@Override
+	public synchronized long cut(long from) {
+		long sz = size();
+		append(CUT, from, null);
+		pages.keySet().removeIf(page -> page * pageSize >= from);
+		byte[] last = pages.get(from / pageSize);
+		if (last != null)
+			Arrays.fill(last, (int) (from % pageSize), pageSize, (byte) 0);
+		cutFloor = Math.min(cutFloor, from);
+		length = from;
+		jump(from);
+		return sz - from;
+	}
+
+	/**
+	 * Appends a record to the log, the record is not synced
+	 */
+	private void append(byte type, long address, ByteBuffer data) {
+		int len = data == null ? 0 : data.remaining();
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + len + CRC_SIZE);
+		record.put(type).putLong(address).putInt(len);
+		if (data != null)
+			record.put(data);
+		crc.reset();
+		crc.update(record.array(), 0, record.position());
+		record.putInt((int) crc.getValue());
+		record.flip();
+		log.write(logEnd, record);
+		logEnd += record.capacity();
+		uncommitted = type != COMMIT;
+	}
+
+	/**
+	 * Makes all changes done so far durable.
+	 * If an other thread syncs the log while this thread waits, the changes of this thread are synced with it
+	 * and no additional sync is needed (group commit)
+	 */
+	public void commit() {
+		long target;
+		synchronized (this) {
+			if (checkpointFailure != null)
+				throw new StorageException(checkpointFailure);
+			if (uncommitted)
+				append(COMMIT, 0, null);
+			target = logBase + logEnd;
+		}
+		synchronized (syncLock) {
+			if (synced >= target)
+				return;
+			long end;
+			synchronized (this) {
+				end = logBase + logEnd;
+			}
+			log.sync();
+			synced = end;
+		}
+		scheduleCheckpoint();
+	}
+
+	/**
+	 * Same as {@link #commit()}
+	 */
+	@Override
+	public void sync() {
+		commit();
+	}
+
+	private synchronized void scheduleCheckpoint() {
+		if (checkpointSize == 0 || checkpointScheduled || logEnd < checkpointSize)
+			return;
+		if (checkpointer == null) {
+			checkpointer = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "JournaledStore checkpoint");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		checkpointScheduled = true;
+		checkpointer.submit(() -> {
+			try {
+				checkpoint();
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					checkpointFailure = e;
+				}
+			} finally {
+				synchronized (this) {
+					checkpointScheduled = false;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes all changes to the main store, syncs it and empties the log.
+	 * All changes are committed by a checkpoint. Reads and writes are blocked while the checkpoint runs
+	 */
+	public void checkpoint() {
+		synchronized (syncLock) {
+			synchronized (this) {
+				if (logEnd == 0)
+					return;
+				if (main.size() > cutFloor)
+					main.cut(cutFloor);
+				for (Map.Entry<Long, byte[]> page : new TreeMap<>(pages).entrySet()) {
+					long start = page.getKey() * pageSize;
+					int n = (int) Math.min(pageSize, length - start);
+					main.write(start, ByteBuffer.wrap(page.getValue(), 0, n));
+				}
+				main.sync();
+				log.cut(0);
+				log.sync();
+				logBase += logEnd;
+				logEnd = 0;
+				synced = logBase;
+				uncommitted = false;
+				pages.clear();
+				cutFloor = length;
+			}
+		}
+	}
+
+	/**
+	 * Replays all committed records of the log onto the main store and empties the log
+	 */
+	private void recover() {
+		long committed = 0;
+		for (Record record = readRecord(0); record != null; record = readRecord(record.end)) {
+			if (record.type == COMMIT)
+				committed = record.end;
+		}
+		for (Record record = readRecord(0); record != null && record.end <= committed; record = readRecord(record.end)) {
+			if (record.type == WRITE)
+				main.write(record.address, record.data);
+			else if (record.type == CUT && main.size() > record.address)
+				main.cut(record.address);
+		}
+		if (log.size() > 0) {
+			main.sync();
+			log.cut(0);
+			log.sync();
+		}
+	}
+
+	/**
+	 * @return the record at the position or null if there is no complete and valid record
+	 */
+	private Record readRecord(long position) {
+		long size = log.size();
+		if (position + HEADER_SIZE + CRC_SIZE > size)
+			return null;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		log.read(position, header);
+		header.flip();
+		byte type = header.get();
+		long address = header.getLong();
+		int len = header.getInt();
+		if (type < WRITE || type > COMMIT || address < 0 || len < 0 || position + HEADER_SIZE + len + CRC_SIZE > size)
+			return null;
+		ByteBuffer data = ByteBuffer.allocate(len + CRC_SIZE);
+		log.read(position + HEADER_SIZE, data);
+		crc.reset();
+		crc.update(header.array());
+		crc.update(data.array(), 0, len);
+		if ((int) crc.getValue() != data.getInt(len))
+			return null;
+		data.flip();
+		data.limit(len);
+		return new Record(type, address, data, position + HEADER_SIZE + len + CRC_SIZE);
+	}
+
+	/**
+	 * Checkpoints all changes and stops the background checkpoints. The main store and the log are not closed
+	 */
+	@Override
+	public void close() {
+		checkpoint();
+		synchronized (this) {
+			if (checkpointer != null)
+				checkpointer.shutdown();
+		}
+	}
+
+	private static class Record {
+		private final byte type;
+		private final long address;
+		private final ByteBuffer data;
+		private final long end;
+
+		private Record(byte type, long address, ByteBuffer data, long end) {
+			this.type = type;
+			this.address = address;
+			this.data = data;
+			this.end = end;
+		}
+	}
+}
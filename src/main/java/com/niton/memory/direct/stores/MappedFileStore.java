@@ -0,0 +1,321 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.StorageException;
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
+import com.niton.memory.direct.SyncPolicy;
+import com.niton.memory.direct.managed.BitSystem;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * A file backed DataStore that maps the file into memory.<br>
+ * The file is mapped in regions of a fixed size, so files bigger than Integer.MAX_VALUE are supported.
+ * Reads and writes are plain memory copies and do not cause a syscall.<br>
+ * The file is grown in steps (and remapped) when writing beyond the mapped area,
+ * the bytes between {@link #size()} and the physical file length are removed (and the end is remapped) on {@link #sync()} and {@link #close()}.
+ * A store which is neither synced nor closed counts them as data when it is opened again.<br>
+ * The regions are guarded by the monitor of the store, so a sync in the background never uses a region which is remapped
+ */
+public class MappedFileStore extends DataStore implements Closeable {
+	/**
+	 * 1 GB regions
+	 */
+	public static final long DEFAULT_REGION_SIZE = 1024 * 1024 * 1024;
+	/**
+	 * The smallest step the file is grown by
+	 */
+	public static final long MIN_GROWTH = 64 * 1024;
+	/**
+	 * The size of the chunks data is moved in (1 MB)
+	 */
+	public static final int MOVE_CHUNK_SIZE = 1024 * 1024;
+	/**
+	 * The page size assumed when touching pages to load them
+	 */
+	private static final int PAGE_SIZE = 4096;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long regionSize;
+	private final List<MappedByteBuffer> regions = new ArrayList<>();
+	private volatile long capacity;
+	private volatile long length;
+	private SyncPolicy syncPolicy = SyncPolicy.none();
+	/**
+	 * Keeps the JIT from removing the reads of {@link #preload(long, long, LongConsumer)}
+	 */
+	private volatile byte lastTouched;
+
+	public MappedFileStore(File f) throws IOException {
+		this(f, DEFAULT_REGION_SIZE);
+	}
+
+	public MappedFileStore(File f, long regionSize) throws IOException {
+		this(new RandomAccessFile(f, "rw"), regionSize);
+	}
+
+	public MappedFileStore(RandomAccessFile file) throws IOException {
+		this(file, DEFAULT_REGION_SIZE);
+	}
+
+	public MappedFileStore(RandomAccessFile file, long regionSize) throws IOException {
+		if (regionSize < 1 || regionSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The region size needs to be between 1 and Integer.MAX_VALUE");
+		this.file = file;
+		this.channel = file.getChannel();
+		this.regionSize = regionSize;
+		this.length = file.length();
+		this.capacity = length;
+		map(0);
+	}
+
+	@Override
+	public long size() {
+		return length;
+	}
+
+	/**
+	 * @return the number of bytes currently mapped (and allocated in the file)
+	 */
+	public long capacity() {
+		return capacity;
+	}
+
+	public SyncPolicy getSyncPolicy() {
+		return syncPolicy;
+	}
+
+	/**
+	 * Sets when this store syncs its changes to the disk, {@link SyncPolicy#none()} by default
+	 */
+	public void setSyncPolicy(SyncPolicy syncPolicy) {
+		this.syncPolicy = syncPolicy;
+	}
+
+	public long getRegionSize() {
+		return regionSize;
+	}
+
+	@Override
+	protected byte[] innerRead(long from, long to) {
+		byte[] res = new byte[(int) (to - from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected synchronized void innerRead(long from, ByteBuffer dst) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		long to = from + dst.remaining();
+		//everything beyond the mapped area reads as 0 like in a FileStore
+		int mapped = (int) (Math.min(to, capacity) - Math.min(from, capacity));
+		ByteBuffer target = dst.duplicate();
+		target.limit(target.position() + mapped);
+		copy(from, target, false);
+		dst.position(dst.position() + mapped);
+		while (dst.hasRemaining())
+			dst.put((byte) 0);
+	}
+
+	@Override
+	protected void innerWrite(byte[] data, long from, long to) {
+		innerWrite(from, ByteBuffer.wrap(data, 0, (int) (to - from)));
+	}
+
+	@Override
+	protected synchronized void innerWrite(long to, ByteBuffer src) {
+		if (to < 0)
+			throw new NegativeIndexException();
+		long end = to + src.remaining();
+		ensureCapacity(end);
+		copy(to, src, true);
+		length = Math.max(length, end);
+		syncPolicy.changed(this, end - to);
+	}
+
+	@Override
+	public synchronized long readWord(long address, BitSystem bits) {
+		int regionOffset = (int) (address % regionSize);
+		long end = address + bits.getBase();
+		if (address < 0 || end > capacity || regionOffset + bits.getBase() > regionSize)
+			return super.readWord(address, bits);
+		return bits.get(regions.get((int) (address / regionSize)), regionOffset);
+	}
+
+	@Override
+	public synchronized void writeWord(long address, long value, BitSystem bits) {
+		int regionOffset = (int) (address % regionSize);
+		long end = address + bits.getBase();
+		if (address < 0 || end > capacity || regionOffset + bits.getBase() > regionSize) {
+			super.writeWord(address, value, bits);
+			return;
+		}
+		bits.put(regions.get((int) (address / regionSize)), regionOffset, value);
+		length = Math.max(length, end);
+		syncPolicy.changed(this, bits.getBase());
+	}
+
+	/**
+	 * Copies data between the mapped regions and a buffer
+	 *
+	 * @param address the address in the store to start at
+	 * @param data    the buffer to copy from/to, all remaining bytes are copied
+	 * @param write   if true the data is copied into the store, otherwise from the store into the buffer
+	 */
+	private void copy(long address, ByteBuffer data, boolean write) {
+		while (data.hasRemaining()) {
+			int region = (int) (address / regionSize);
+			int regionOffset = (int) (address % regionSize);
+			MappedByteBuffer buffer = regions.get(region);
+			int n = Math.min(data.remaining(), buffer.capacity() - regionOffset);
+			ByteBuffer view = buffer.duplicate();
+			view.position(regionOffset);
+			view.limit(regionOffset + n);
+			if (write) {
+				ByteBuffer part = data.duplicate();
+				part.limit(part.position() + n);
+				view.put(part);
+				data.position(data.position() + n);
+			} else {
+				data.put(view);
+			}
+			address += n;
+		}
+	}
+
+	/**
+	 * Grows the file and the mapping so that at least {@code end} bytes are addressable
+	 */
+	private void ensureCapacity(long end) {
+		if (end <= capacity)
+			return;
+		long growth = Math.min(Math.max(capacity, MIN_GROWTH), regionSize);
+		long newCapacity = ((end + growth - 1) / growth) * growth;
+		try {
+			file.setLength(newCapacity);
+			long oldCapacity = capacity;
+			capacity = newCapacity;
+			map((int) (oldCapacity / regionSize));
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	/**
+	 * (Re)maps all regions starting with the given one
+	 */
+	private void map(int firstRegion) throws IOException {
+		while (regions.size() > firstRegion)
+			regions.remove(regions.size() - 1);
+		for (long start = firstRegion * regionSize; start < capacity; start += regionSize) {
+			regions.add(channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(regionSize, capacity - start)));
+		}
+	}
+
+	/**
+	 * Uses {@link MappedByteBuffer#load()} for regions completely inside the range and touches every page of partially covered regions
+	 */
+	@Override
+	public synchronized void preload(long from, long to, LongConsumer loaded) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		to = Math.min(to, size());
+		long address = from;
+		while (address < to) {
+			int region = (int) (address / regionSize);
+			int regionOffset = (int) (address % regionSize);
+			MappedByteBuffer buffer = regions.get(region);
+			int n = (int) Math.min(to - address, buffer.capacity() - regionOffset);
+			if (regionOffset == 0 && n == buffer.capacity()) {
+				buffer.load();
+			} else {
+				//reading one byte of each page makes the operating system load it, like load() does
+				byte touched = 0;
+				for (int i = regionOffset; i < regionOffset + n; i += PAGE_SIZE)
+					touched ^= buffer.get(i);
+				touched ^= buffer.get(regionOffset + n - 1);
+				lastTouched = touched;
+			}
+			loaded.accept(n);
+			address += n;
+		}
+	}
+
+	/**
+	 * Moving is a plain memory copy, so it is done in big chunks
+	 */
+	@Override
+	protected int moveChunkSize() {
+		return MOVE_CHUNK_SIZE;
+	}
+
+	/**
+	 * Changes the logical size and clears the cut bytes, so they read as 0 when the store grows again.
+	 * The file keeps its physical length until {@link #sync()} or {@link #close()}
+	 */
+	@Override
+	public synchronized long cut(long from) {
+		long sz = size();
+		long clearEnd = Math.min(sz, capacity);
+		if (from < clearEnd) {
+			ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(clearEnd - from, MOVE_CHUNK_SIZE));
+			for (long address = from; address < clearEnd; address += zeros.capacity()) {
+				zeros.clear();
+				zeros.limit((int) Math.min(zeros.capacity(), clearEnd - address));
+				copy(address, zeros, true);
+			}
+		}
+		length = from;
+		jump(from);
+		syncPolicy.changed(this, 0);
+		return sz - from;
+	}
+
+	/**
+	 * Forces all changes to be written to the disk
+	 */
+	public synchronized void force() {
+		for (MappedByteBuffer region : regions)
+			region.force();
+	}
+
+	/**
+	 * Forces all changes to the disk and removes the reserved space behind the logical size
+	 */
+	@Override
+	public synchronized void sync() {
+		force();
+		//the reserved space would be counted as data when the file is opened again
+		if (capacity > length) {
+			try {
+				channel.truncate(length);
+				capacity = length;
+				map((int) (length / regionSize));
+			} catch (IOException e) {
+				throw new StorageException(e);
+			}
+		}
+	}
+
+	/**
+	 * Writes all changes to the disk and truncates the file to its logical size
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		force();
+		regions.clear();
+		channel.truncate(length);
+		file.close();
+	}
+}
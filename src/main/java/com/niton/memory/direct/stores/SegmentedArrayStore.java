@@ -0,0 +1,208 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.NegativeIndexException;
+import com.niton.memory.direct.managed.BitSystem;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable DataStore keeping its data on the heap in byte arrays of a fixed size (chunks).<br>
+ * In contrast to the {@link ArrayStore} the size does not need to be known up front and is not limited to Integer.MAX_VALUE bytes.
+ * Chunks are allocated when they are written to, chunks which are not needed anymore after a {@link #cut(long)} are released.
+ */
+public class SegmentedArrayStore extends DataStore {
+	/**
+	 * 64 KB chunks
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	private final int chunkSize;
+	private byte[][] chunks = new byte[0][];
+	private int chunkCount = 0;
+	private long length = 0;
+
+	public SegmentedArrayStore() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	public SegmentedArrayStore(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("Chunk size must be > 0");
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public long size() {
+		return length;
+	}
+
+	/**
+	 * @return the number of bytes currently allocated
+	 */
+	public long capacity() {
+		return (long) chunkCount * chunkSize;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	@Override
+	protected byte[] innerRead(long from, long to) {
+		byte[] res = new byte[(int) (to - from)];
+		innerRead(from, ByteBuffer.wrap(res));
+		return res;
+	}
+
+	@Override
+	protected void innerRead(long from, ByteBuffer dst) {
+		if (from < 0)
+			throw new NegativeIndexException();
+		long address = from;
+		while (dst.hasRemaining()) {
+			int chunkOffset = (int) (address % chunkSize);
+			int n = Math.min(dst.remaining(), chunkSize - chunkOffset);
+			long chunk = address / chunkSize;
+			//not allocated memory reads as 0
+			if (chunk < chunkCount)
+				dst.put(chunks[(int) chunk], chunkOffset, n);
+			else
+				for (int i = 0; i < n; i++)
+					dst.put((byte) 0);
+			address += n;
+		}
+	}
+
+	@Override
+	protected void innerWrite(byte[] data, long from, long to) {
+		innerWrite(from, ByteBuffer.wrap(data, 0, (int) (to - from)));
+	}
+
+	@Override
+	protected void innerWrite(long to, ByteBuffer src) {
+		if (to < 0)
+			throw new NegativeIndexException();
+		long end = to + src.remaining();
+		ensureCapacity(end);
+		long address = to;
+		while (src.hasRemaining()) {
+			int chunkOffset = (int) (address % chunkSize);
+			int n = Math.min(src.remaining(), chunkSize - chunkOffset);
+			src.get(chunks[(int) (address / chunkSize)], chunkOffset, n);
+			address += n;
+		}
+		length = Math.max(length, end);
+	}
+
+	@Override
+	public long readWord(long address, BitSystem bits) {
+		int chunkOffset = (int) (address % chunkSize);
+		long end = address + bits.getBase();
+		if (address < 0 || end > capacity() || chunkOffset + bits.getBase() > chunkSize)
+			return super.readWord(address, bits);
+		return bits.get(chunks[(int) (address / chunkSize)], chunkOffset);
+	}
+
+	@Override
+	public void writeWord(long address, long value, BitSystem bits) {
+		int chunkOffset = (int) (address % chunkSize);
+		long end = address + bits.getBase();
+		if (address < 0 || end > capacity() || chunkOffset + bits.getBase() > chunkSize) {
+			super.writeWord(address, value, bits);
+			return;
+		}
+		bits.put(chunks[(int) (address / chunkSize)], chunkOffset, value);
+		length = Math.max(length, end);
+	}
+
+	/**
+	 * Copies directly between the chunks using {@link System#arraycopy(Object, int, Object, int, int)}
+	 */
+	@Override
+	public void move(long from, long to, long length) {
+		if (length <= 0 || from == to)
+			return;
+		if (from < 0 || to < 0)
+			throw new NegativeIndexException();
+		ensureCapacity(Math.max(from, to) + length);
+		//when moving towards the end the last part has to be moved first, so it is not overwritten
+		boolean startAtEnd = to > from;
+		long done = 0;
+		while (done < length) {
+			long src = startAtEnd ? from + length - done : from + done;
+			long dst = startAtEnd ? to + length - done : to + done;
+			int n;
+			if (startAtEnd) {
+				//copy the bytes in front of src and dst
+				int srcOffset = (int) ((src - 1) % chunkSize) + 1;
+				int dstOffset = (int) ((dst - 1) % chunkSize) + 1;
+				n = (int) Math.min(length - done, Math.min(srcOffset, dstOffset));
+				src -= n;
+				dst -= n;
+			} else {
+				n = (int) Math.min(length - done, Math.min(chunkSize - src % chunkSize, chunkSize - dst % chunkSize));
+			}
+			System.arraycopy(
+					chunks[(int) (src / chunkSize)], (int) (src % chunkSize),
+					chunks[(int) (dst / chunkSize)], (int) (dst % chunkSize),
+					n
+			);
+			done += n;
+		}
+		this.length = Math.max(this.length, to + length);
+	}
+
+	/**
+	 * Writes the chunks into the target without buffering
+	 */
+	@Override
+	public void copyRange(long from, long to, DataStore target, long targetAddress) {
+		if (from < 0 || targetAddress < 0)
+			throw new NegativeIndexException();
+		long address = from;
+		while (address < to) {
+			long chunk = address / chunkSize;
+			//not allocated memory is copied as 0 by the default implementation
+			if (chunk >= chunkCount) {
+				super.copyRange(address, to, target, targetAddress + (address - from));
+				return;
+			}
+			int chunkOffset = (int) (address % chunkSize);
+			int n = (int) Math.min(to - address, chunkSize - chunkOffset);
+			target.write(targetAddress + (address - from), ByteBuffer.wrap(chunks[(int) chunk], chunkOffset, n));
+			address += n;
+		}
+	}
+
+	/**
+	 * Allocates chunks until at least {@code end} bytes fit into the store
+	 */
+	private void ensureCapacity(long end) {
+		long neededChunks = (end + chunkSize - 1) / chunkSize;
+		if (neededChunks > Integer.MAX_VALUE)
+			throw new IndexOutOfBoundsException("SegmentedArrayStores do not support more than Integer.MAX_VALUE chunks");
+		if (neededChunks > chunks.length)
+			chunks = Arrays.copyOf(chunks, (int) Math.min(Integer.MAX_VALUE, Math.max(neededChunks, chunks.length * 2L)));
+		while (chunkCount < neededChunks)
+			chunks[chunkCount++] = new byte[chunkSize];
+	}
+
+	@Override
+	public long cut(long from) {
+		long sz = size();
+		length = from;
+		//cutting behind the end only grows the store, the bytes behind the old end are 0 already
+		if (from < sz) {
+			long neededChunks = (from + chunkSize - 1) / chunkSize;
+			while (chunkCount > neededChunks)
+				chunks[--chunkCount] = null;
+			//the remaining bytes of the chunk holding the new end need to read as 0 when the store grows again
+			int lastOffset = (int) (from % chunkSize);
+			if (lastOffset != 0 && from / chunkSize < chunkCount)
+				Arrays.fill(chunks[chunkCount - 1], lastOffset, chunkSize, (byte) 0);
+		}
+		jump(from);
+		return sz - from;
+	}
+}
@@ -2,12 +2,17 @@ package com.niton.collections;
 
 import com.niton.collections.backed.BackedList;
 import com.niton.collections.backed.Serializer;
+import com.niton.memory.direct.managed.AllocationMode;
 import com.niton.memory.direct.stores.ArrayStore;
 import com.niton.memory.direct.stores.FixedDataStore;
+import com.niton.memory.direct.stores.SegmentedArrayStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.ListIterator;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -22,6 +27,56 @@ public class BackedListTest {
 		store.bufferSize = 1;
 		list = new BackedList<>(store, Serializer.STRING, false);
 	}
+	@Test
+	public void transfer(){
+		for (int i = 0; i < 100; i++)
+			list.add("element " + i);
+		SegmentedArrayStore target = new SegmentedArrayStore();
+		list.transferTo(target);
+		BackedList<String> copy = new BackedList<>(target, Serializer.STRING, true);
+		assertEquals(list, copy);
+		copy.add("new");
+		assertEquals(101, copy.size());
+		assertEquals(100, list.size());
+	}
+
+	@Test
+	public void relocating(){
+		SegmentedArrayStore store = new SegmentedArrayStore();
+		BackedList<String> relocating = new BackedList<>(store, Serializer.STRING, false, AllocationMode.RELOCATING);
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			relocating.add("element " + i);
+			expected.add("element " + i);
+		}
+		relocating.add(10, "inserted");
+		expected.add(10, "inserted");
+		relocating.set(3, String.join("", Collections.nCopies(300, "grown")));
+		expected.set(3, String.join("", Collections.nCopies(300, "grown")));
+		relocating.remove(20);
+		expected.remove(20);
+		assertEquals(expected, relocating);
+		assertEquals(expected, new BackedList<>(store, Serializer.STRING, true, AllocationMode.RELOCATING));
+	}
+
+	@Test
+	public void compact(){
+		ArrayStore store = new ArrayStore(1024*1024);
+		BackedList<String> compacted = new BackedList<>(store, Serializer.STRING, false);
+		for (int i = 0; i < 100; i++)
+			compacted.add("element " + i);
+		for (int i = 0; i < 50; i++)
+			compacted.remove(10);
+		long size = store.size();
+		List<String> expected = new ArrayList<>(compacted);
+		compacted.compact();
+		assertTrue(store.size() < size);
+		assertEquals(expected, compacted);
+		assertEquals(expected, new BackedList<>(store, Serializer.STRING, true));
+		compacted.add("new");
+		assertEquals("new", compacted.get(50));
+	}
+
 	@Test
 	public void general(){
 		list.add("Wir");
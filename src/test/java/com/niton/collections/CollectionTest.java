@@ -8,7 +8,10 @@ import com.niton.collections.backed.BackedList;
 import com.niton.collections.backed.BackedMap;
 import com.niton.collections.backed.BackedPerformanceList;
 import com.niton.collections.backed.Serializer;
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.managed.AllocationMode;
 import com.niton.memory.direct.stores.ArrayStore;
+import com.niton.memory.direct.stores.SegmentedArrayStore;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -28,6 +31,8 @@ public class CollectionTest {
 	private final ArrayStore memoryOne = new ArrayStore(50*1024*1024);
 	private final ArrayStore memoryTwo = new ArrayStore(50*1024*1024);
 	private final ArrayStore memoryThree = new ArrayStore(50*1024*1024);
+	private final SegmentedArrayStore memoryFour = new SegmentedArrayStore();
+	private final SegmentedArrayStore memoryFive = new SegmentedArrayStore();
 
 	public static Test suite() {
 		return new CollectionTest().allTests();
@@ -39,7 +44,9 @@ public class CollectionTest {
 				new TestSuite("Backed Collections Tests");
 			//suite.addTest(testBackedList(()->new BackedList<>(memoryOne, Serializer.STRING,false)));
 			suite.addTest(testBackedList(()->new BackedPerformanceList<>(memoryTwo, false,Serializer.STRING)));
-			suite.addTest(testBackedMap());
+			suite.addTest(testBackedMap("Backed Map", memoryThree, AllocationMode.SHIFTING));
+			suite.addTest(testBackedMap("Chained Backed Map", memoryFour, AllocationMode.CHAINED));
+			suite.addTest(testBackedMap("Relative Backed Map", memoryFive, AllocationMode.RELATIVE));
 			return suite;
 		} catch (NoSuchMethodException e) {
 			e.printStackTrace();
@@ -47,7 +54,7 @@ public class CollectionTest {
 		}
 	}
 
-	private Test testBackedMap() {
+	private Test testBackedMap(String name, DataStore store, AllocationMode mode) {
 		return MapTestSuiteBuilder
 				.using(new TestMapGenerator<String, String>() {
 					@Override
@@ -63,7 +70,7 @@ public class CollectionTest {
 
 					@Override
 					public Map<String, String> create(Object... elements) {
-						BackedMap<String,String> create = new BackedMap<>(memoryThree,Serializer.STRING,Serializer.STRING,false);
+						BackedMap<String,String> create = new BackedMap<>(store,Serializer.STRING,Serializer.STRING,false,mode);
 						for (Object element : elements) {
 							Entry<String,String> e = (Map.Entry<String, String>) element;
 							create.put(e.getKey(),e.getValue());
@@ -91,7 +98,7 @@ public class CollectionTest {
 						return new String[length];
 					}
 				})
-				.named("Backed Map")
+				.named(name)
 				.withFeatures(
 						CollectionSize.ANY,
 						SUPPORTS_REMOVE,
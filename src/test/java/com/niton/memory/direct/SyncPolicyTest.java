@@ -0,0 +1,39 @@
+package com.niton.memory.direct;
+
+import com.niton.memory.direct.stores.SegmentedArrayStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyncPolicyTest {
+	@Test
+	void everyBytesKeepsLateChanges() throws Exception {
+		Semaphore syncs = new Semaphore(0);
+		CountDownLatch release = new CountDownLatch(1);
+		DataStore counting = new SegmentedArrayStore() {
+			@Override
+			public void sync() {
+				syncs.release();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		SyncPolicy policy = SyncPolicy.everyBytes(4);
+		policy.changed(counting, 4);
+		assertTrue(syncs.tryAcquire(5, TimeUnit.SECONDS));
+		//triggers the next sync while the first one is still running
+		policy.changed(counting, 4);
+		policy.changed(counting, 3);
+		release.countDown();
+		assertTrue(syncs.tryAcquire(5, TimeUnit.SECONDS));
+		policy.changed(counting, 1);
+		assertTrue(syncs.tryAcquire(5, TimeUnit.SECONDS), "Bytes changed after a sync was triggered have to count for the next one");
+	}
+}
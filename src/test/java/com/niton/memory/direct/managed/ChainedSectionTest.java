@@ -0,0 +1,53 @@
+package com.niton.memory.direct.managed;
+
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.stores.DataStoreTest;
+import com.niton.memory.direct.stores.SegmentedArrayStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChainedSectionTest extends DataStoreTest {
+	private SegmentedArrayStore baseStorage;
+
+	@Override
+	protected DataStore createDataStoreImpl() {
+		baseStorage = new SegmentedArrayStore(64);
+		baseStorage.write(new byte[4 * BitSystem.X32.getBase()], 0, 4 * BitSystem.X32.getBase());
+		ChainedSection section = open();
+		//small blocks so that most operations span multiple extents
+		section.init(3, 1, 0);
+		return section;
+	}
+
+	private ChainedSection open() {
+		int base = BitSystem.X32.getBase();
+		return new ChainedSection(baseStorage, 0, base, base * 2L, base * 3L, BitSystem.X32);
+	}
+
+	@Test
+	void extents() {
+		ChainedSection section = (ChainedSection) store;
+		assertEquals(1, section.getExtentCount());
+		assertEquals(3, section.capacity());
+		byte[] data = new byte[20];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i + 1);
+		section.write(data, 0, data.length);
+		assertEquals(2, section.getExtentCount());
+		assertEquals(21, section.capacity());
+
+		//something else is stored behind the section, growing must not touch it
+		long foreign = baseStorage.size();
+		baseStorage.write(new byte[]{42}, foreign, foreign + 1);
+		section.write(data, 20, 40);
+		assertEquals(42, baseStorage.read(foreign, foreign + 1)[0]);
+
+		ChainedSection reopened = open();
+		assertEquals(section.getExtentCount(), reopened.getExtentCount());
+		assertEquals(40, reopened.size());
+		assertArrayEquals(data, reopened.read(0, 20));
+		assertArrayEquals(data, reopened.read(20, 40));
+		assertEquals(section.resolveAddress(39), reopened.resolveAddress(39));
+	}
+}
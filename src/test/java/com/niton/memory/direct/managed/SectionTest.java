@@ -65,12 +65,12 @@ public class SectionTest extends DataStoreTest {
 		long start = sect.getStartAddress();
 		long size = sect.size();
 		long capa = sect.capacity();
-		sect.shiftForward(30);
+		sect.shiftSection(30);
 		assertEquals(start+30, sect.getStartAddress());
 		assertEquals(size,sect.size());
 		assertEquals(capa,sect.capacity());
 		assertArrayEquals(data,sect.read(0,data.length));
-		sect.shiftBack(20);assertEquals(size,sect.size());
+		sect.shiftSection(-20);assertEquals(size,sect.size());
 		assertEquals(capa,sect.capacity());
 		assertArrayEquals(data,sect.read(0,data.length));
 	}
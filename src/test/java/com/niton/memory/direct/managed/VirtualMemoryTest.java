@@ -1,8 +1,18 @@
 package com.niton.memory.direct.managed;
 
+import com.niton.memory.direct.Preloader;
 import com.niton.memory.direct.stores.ArrayStore;
+import com.niton.memory.direct.stores.SegmentedArrayStore;
 import org.junit.jupiter.api.*;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
@@ -121,9 +131,13 @@ class VirtualMemoryTest {
 		memory.get(1).write(2);
 		memory.get(2).write(3);
 		memory.deleteSegment(0);
+		//the cached sections are kept, so their markers are too
+		memory.get(0).jump(0);
+		memory.get(1).jump(0);
 		assertEquals(2, memory.get(0).read());
 		assertEquals(3, memory.get(1).read());
 		memory.deleteSegment(0);
+		memory.get(0).jump(0);
 		assertEquals(3, memory.get(0).read());
 	}
 
@@ -146,8 +160,10 @@ class VirtualMemoryTest {
 		assertEquals(memory.get(0).getEndAddress(), inserted.getStartAddress());
 		assertEquals(memory.get(2).getStartAddress(), inserted.getEndAddress());
 
-		assertArrayEquals(data,memory.get(0).readNext(data.length));
-		assertArrayEquals(data,memory.get(2).readNext(data.length));
+		assertArrayEquals(data,memory.get(0).read(0,data.length));
+		assertArrayEquals(data,memory.get(2).read(0,data.length));
+		assertSame(orig1, memory.get(0));
+		assertSame(orig2, memory.get(2));
 
 		assertEquals(5,inserted.getBlockSize());
 		assertEquals(0,inserted.size());
@@ -251,4 +267,354 @@ class VirtualMemoryTest {
 		assertArrayEquals(new byte[]{7, 8, 9}, memory.get(2).read(0,3));
 	}
 
-}
\ No newline at end of file
+
+	@Test
+	void preload(){
+		Section first = memory.createSection(10,1);
+		Section second = memory.createSection(10,1);
+		first.write(new byte[25],0,25);
+		second.write(new byte[5],0,5);
+		long[] progress = {-1,-1};
+		Preloader preloader = memory.preload(false)
+				.add(second)
+				.onProgress((loaded, total) -> {
+					progress[0] = loaded;
+					progress[1] = total;
+				});
+		long expected = memory.getIndex().getStartAddress()+memory.getIndex().size()+5;
+		assertEquals(expected, preloader.total());
+		preloader.start().join();
+		assertArrayEquals(new long[]{expected,expected}, progress);
+		assertEquals(store.size(), memory.preload(true).total());
+	}
+
+	@Test
+	void relocatingGrowth(){
+		VirtualMemory relocating = relocatingMemory();
+		Section first = relocating.createSection(4,1);
+		Section second = relocating.createSection(4,1);
+		second.write(data,0,data.length);
+		long secondStart = second.getStartAddress();
+		first.write(new byte[]{1,2,3,4,5,6,7,8,9},0,9);
+		assertEquals(secondStart, second.getStartAddress(), "Growing a section must not move other sections");
+		assertArrayEquals(data, second.read(0,data.length));
+		assertArrayEquals(new byte[]{1,2,3,4,5,6,7,8,9}, first.read(0,9));
+
+		relocating.readIndex();
+		assertEquals(2, relocating.sectionCount());
+		assertArrayEquals(new byte[]{1,2,3,4,5,6,7,8,9}, relocating.get(0).read(0,9));
+		assertArrayEquals(data, relocating.get(1).read(0,data.length));
+	}
+
+	@Test
+	void accessPastCapacity(){
+		for (AllocationMode mode : AllocationMode.values()) {
+			VirtualMemory memory = new VirtualMemory(new SegmentedArrayStore(16),BitSystem.X8,mode);
+			memory.initIndex(1);
+			memory.createSection(4,1).write(data,0,data.length);
+			//the second section starts far behind address 0, so its absolute end address is larger than its capacity
+			Section section = memory.createSection(4,1);
+			section.write(new byte[]{1,2,3,4},0,4);
+			long capacity = section.capacity();
+			assertThrows(Section.SegmentationFault.class, ()->section.readWord(capacity,BitSystem.X8), mode.name());
+			assertThrows(Section.SegmentationFault.class, ()->section.move(capacity,0,1), mode.name());
+			assertThrows(Section.SegmentationFault.class, ()->section.copyRange(0,capacity+1,new SegmentedArrayStore(),0), mode.name());
+			assertThrows(Section.SegmentationFault.class, ()->section.verify(0,capacity+1), mode.name());
+			assertThrows(Section.SegmentationFault.class, ()->section.read(capacity,ByteBuffer.allocate(1)), mode.name());
+			CompletionException async = assertThrows(CompletionException.class, ()->section.readAsync(0,capacity+1).join(), mode.name());
+			assertTrue(async.getCause() instanceof Section.SegmentationFault, mode.name());
+		}
+	}
+
+	@Test
+	void relocatingReuse(){
+		VirtualMemory relocating = relocatingMemory();
+		Section first = relocating.createSection(8,1);
+		Section second = relocating.createSection(8,1);
+		second.write(data,0,data.length);
+		relocating.deleteSegment(0);
+		assertEquals(1, relocating.sectionCount());
+		assertArrayEquals(data, relocating.get(0).read(0,data.length));
+		long end = store.size();
+		Section reused = relocating.createSection(8,1);
+		assertTrue(reused.getEndAddress() <= end, "Space of deleted sections should be reused");
+		assertEquals(end, store.size());
+
+		Section inserted = relocating.insertSection(0,4,1);
+		inserted.write(new byte[]{1,2,3},0,3);
+		assertArrayEquals(new byte[]{1,2,3}, relocating.get(0).read(0,3));
+		assertArrayEquals(data, relocating.get(1).read(0,data.length));
+		assertEquals(3, relocating.sectionCount());
+		assertTrue(store.size() <= end + 8 + 4*relocating.getBits().getBase(), "Free space should be reused");
+	}
+
+	@Test
+	void compact(){
+		Section first = memory.createSection(10,1);
+		Section second = memory.createSection(10,1);
+		Section third = memory.createSection(10,2);
+		first.write(data,0,data.length);
+		second.write(new byte[15],0,15);
+		second.cut(3);
+		third.write(data,0,data.length);
+		Compactor compactor = memory.compactor();
+		while (compactor.step())
+			assertArrayEquals(data, third.read(0,data.length));
+		assertTrue(compactor.isDone());
+		long used = memory.getIndex().getEndAddress()+2L*data.length+3;
+		assertEquals(used, store.size());
+		assertEquals(used, third.getEndAddress());
+		assertEquals(3, second.capacity());
+
+		memory.readIndex();
+		assertArrayEquals(data, memory.get(0).read(0,data.length));
+		assertArrayEquals(data, memory.get(2).read(0,data.length));
+		memory.get(1).write(new byte[]{1,2,3,4},0,4);
+		assertArrayEquals(data, memory.get(2).read(0,data.length));
+	}
+
+	@Test
+	void compactRelocating(){
+		VirtualMemory relocating = relocatingMemory();
+		for (int i = 0; i < 5; i++)
+			relocating.createSection(8,1).write(new byte[]{(byte) i},0,1);
+		relocating.deleteSegment(1);
+		relocating.deleteSegment(2);
+		relocating.get(0).write(new byte[20],1,20);
+		Compactor compactor = relocating.compactor();
+		while (!compactor.run(1, TimeUnit.MILLISECONDS))
+			assertEquals(0, relocating.get(0).read(0,1)[0]);
+		long used = relocating.getIndex().getStartAddress()+relocating.getIndex().size()+20+1+1;
+		assertEquals(used, store.size());
+
+		relocating.readIndex();
+		assertEquals(0, relocating.get(0).read(0,1)[0]);
+		assertEquals(2, relocating.get(1).read(0,1)[0]);
+		assertEquals(4, relocating.get(2).read(0,1)[0]);
+		relocating.get(1).write(new byte[]{9,9},0,2);
+		assertEquals(4, relocating.get(2).read(0,1)[0]);
+		assertEquals(0, relocating.get(0).read(0,1)[0]);
+	}
+
+	@Test
+	void chained(){
+		store.cut(0);
+		VirtualMemory chained = new VirtualMemory(store,BitSystem.X8,AllocationMode.CHAINED);
+		chained.initIndex(1);
+		Section first = chained.createSection(4,1);
+		Section second = chained.createSection(4,1);
+		second.write(data,0,data.length);
+		long secondStart = second.getStartAddress();
+		first.write(new byte[]{1,2,3,4,5,6,7,8,9},0,9);
+		assertEquals(secondStart, second.getStartAddress(), "Growing a section must not move other sections");
+		assertArrayEquals(new byte[]{1,2,3,4,5,6,7,8,9}, first.read(0,9));
+		assertArrayEquals(data, second.read(0,data.length));
+
+		chained.insertSection(1,4,1).write(new byte[]{7},0,1);
+		chained.deleteSegment(0);
+		chained.createSection(2,0).write(new byte[]{3,3,3},0,3);
+		chained.readIndex();
+		assertEquals(3, chained.sectionCount());
+		assertArrayEquals(new byte[]{7}, chained.get(0).read(0,1));
+		assertArrayEquals(data, chained.get(1).read(0,data.length));
+		assertArrayEquals(new byte[]{3,3,3}, chained.get(2).read(0,3));
+		assertThrows(UnsupportedOperationException.class, chained::compactor);
+	}
+
+	@Test
+	void chainedReusesDeletedSections(){
+		store.cut(0);
+		VirtualMemory chained = new VirtualMemory(store,BitSystem.X8,AllocationMode.CHAINED);
+		chained.initIndex(4);
+		chained.createSection(4,1).write(data,0,data.length);
+		for (int i = 0; i < 3; i++) {
+			chained.createSection(4,1).write(new byte[]{1,2,3,4,5,6,7,8,9},0,9);
+			chained.deleteSegment(1);
+		}
+		long size = store.size();
+		for (int i = 0; i < 20; i++) {
+			Section churn = chained.createSection(4,1);
+			churn.write(new byte[]{9},8,9);
+			assertArrayEquals(new byte[8], churn.read(0,8), "Reused space has to be cleared");
+			churn.write(new byte[]{1,2,3,4,5,6,7,8,9},0,9);
+			chained.deleteSegment(1);
+			if(i % 5 == 0)
+				chained.readIndex();
+		}
+		assertTrue(store.size() <= size, "The extents of deleted sections have to be reused");
+		assertArrayEquals(data, chained.get(0).read(0,data.length));
+	}
+
+	@Test
+	void relative(){
+		store.cut(0);
+		VirtualMemory relative = new VirtualMemory(store,BitSystem.X8,AllocationMode.RELATIVE);
+		relative.initIndex(4);
+		Section first = relative.createSection(4,1);
+		Section second = relative.createSection(4,1);
+		Section third = relative.createSection(4,1);
+		second.write(data,0,data.length);
+		third.write(data,0,data.length);
+		int entrySize = relative.getSectionHeaderSize();
+		byte[] entries = relative.getIndex().read(entrySize, 3L*entrySize);
+		first.write(new byte[]{1,2,3,4,5,6,7,8,9},0,9);
+		assertArrayEquals(entries, relative.getIndex().read(entrySize, 3L*entrySize), "Growing must not change the entries of other sections");
+		assertEquals(first.getEndAddress(), second.getStartAddress());
+		assertArrayEquals(data, second.read(0,data.length));
+		assertArrayEquals(data, third.read(0,data.length));
+
+		relative.insertSection(1,2,1).write(new byte[]{7},0,1);
+		relative.deleteSegment(2);
+		relative.readIndex();
+		assertEquals(3, relative.sectionCount());
+		assertArrayEquals(new byte[]{1,2,3,4,5,6,7,8,9}, relative.get(0).read(0,9));
+		assertArrayEquals(new byte[]{7}, relative.get(1).read(0,1));
+		assertArrayEquals(data, relative.get(2).read(0,data.length));
+
+		relative.compact();
+		assertEquals(relative.getIndex().getStartAddress()+relative.getIndex().size()+9+1+data.length, store.size());
+		relative.readIndex();
+		assertArrayEquals(new byte[]{1,2,3,4,5,6,7,8,9}, relative.get(0).read(0,9));
+		assertArrayEquals(new byte[]{7}, relative.get(1).read(0,1));
+		assertArrayEquals(data, relative.get(2).read(0,data.length));
+	}
+
+	@Test
+	void incrementalIndex(){
+		for (AllocationMode mode : AllocationMode.values()) {
+			SegmentedArrayStore backing = new SegmentedArrayStore(32);
+			VirtualMemory patched = new VirtualMemory(backing,BitSystem.X32,mode);
+			patched.initIndex(2);
+			Random random = new Random(mode.ordinal());
+			for (int step = 0; step < 60; step++) {
+				long count = patched.sectionCount();
+				if(count > 0 && random.nextInt(3) == 0) {
+					patched.deleteSegment(random.nextInt((int) count));
+				} else {
+					Section inserted = patched.insertSection(random.nextInt((int) count + 1), 1 + random.nextInt(4), random.nextInt(3));
+					inserted.write(new byte[]{(byte) step, (byte) step}, 0, 2);
+				}
+				if(patched.sectionCount() > 0)
+					patched.get(random.nextInt((int) patched.sectionCount())).write(new byte[8], 2, 2 + random.nextInt(9));
+				VirtualMemory read = new VirtualMemory(backing,BitSystem.X32,mode);
+				read.readIndex();
+				assertEquals(read.sectionCount(), patched.sectionCount(), mode.name());
+				for (int i = 0; i < read.sectionCount(); i++) {
+					Section expected = read.get(i);
+					Section actual = patched.get(i);
+					assertEquals(expected.getStartAddress(), actual.getStartAddress(), mode + " section " + i);
+					assertEquals(expected.getEndAddress(), actual.getEndAddress(), mode + " section " + i);
+					assertEquals(expected.size(), actual.size(), mode + " section " + i);
+					assertArrayEquals(expected.read(0, 2), actual.read(0, 2), mode + " section " + i);
+				}
+			}
+		}
+	}
+
+	@Test
+	void randomModel(){
+		for (AllocationMode mode : AllocationMode.values()) {
+			for (int seed = 0; seed < 20; seed++) {
+				SegmentedArrayStore backing = new SegmentedArrayStore(64);
+				VirtualMemory memory = new VirtualMemory(backing,BitSystem.X32,mode);
+				memory.initIndex(2);
+				//the expected content of each section
+				List<byte[]> model = new ArrayList<>();
+				Random random = new Random(seed);
+				for (int step = 0; step < 80; step++) {
+					String at = mode + " seed " + seed + " step " + step;
+					int operation = random.nextInt(4);
+					if(model.isEmpty() || operation == 0) {
+						int i = random.nextInt(model.size()+1);
+						memory.insertSection(i,1+random.nextInt(8),random.nextInt(3));
+						model.add(i,new byte[0]);
+					} else if(operation == 1) {
+						int i = random.nextInt(model.size());
+						memory.deleteSegment(i);
+						model.remove(i);
+					} else {
+						int i = random.nextInt(model.size());
+						byte[] old = model.get(i);
+						int from = random.nextInt(old.length+1);
+						byte[] written = new byte[1+random.nextInt(40)];
+						Arrays.fill(written,(byte) step);
+						memory.get(i).write(written,from,from+written.length);
+						byte[] content = Arrays.copyOf(old,Math.max(old.length,from+written.length));
+						System.arraycopy(written,0,content,from,written.length);
+						model.set(i,content);
+					}
+					assertModel(memory,model,at);
+					assertModel(reopen(backing,mode),model,at+" (read)");
+				}
+			}
+		}
+	}
+
+	private static void assertModel(VirtualMemory memory, List<byte[]> model, String at) {
+		assertEquals(model.size(),memory.sectionCount(),at);
+		for (int i = 0; i < model.size(); i++) {
+			Section section = memory.get(i);
+			assertEquals(model.get(i).length,section.size(),at+" section "+i);
+			assertArrayEquals(model.get(i),section.read(0,section.size()),at+" section "+i);
+		}
+	}
+
+	@Test
+	void lazyIndex(){
+		for (AllocationMode mode : AllocationMode.values()) {
+			SegmentedArrayStore backing = new SegmentedArrayStore(32);
+			VirtualMemory created = new VirtualMemory(backing,BitSystem.X32,mode);
+			created.initIndex(2);
+			List<byte[]> expected = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				byte[] content = {(byte) i, (byte) i, (byte) i};
+				created.createSection(2,2).write(content,0,content.length);
+				expected.add(content);
+			}
+			//each change is made on a freshly read memory, so the other sections were not used before
+			byte[] large = new byte[40];
+			Arrays.fill(large,(byte) 42);
+			reopen(backing,mode).get(3).write(large,0,large.length);
+			expected.set(3,large);
+			assertSections(backing,mode,expected);
+
+			VirtualMemory appended = reopen(backing,mode);
+			for (int i = 0; i < 5; i++) {
+				appended.createSection(1,1).write(new byte[]{(byte) (20+i)},0,1);
+				expected.add(new byte[]{(byte) (20+i)});
+			}
+			assertSections(backing,mode,expected);
+
+			reopen(backing,mode).insertSection(5,1,2).write(new byte[]{99},0,1);
+			expected.add(5,new byte[]{99});
+			assertSections(backing,mode,expected);
+
+			reopen(backing,mode).deleteSegment(1);
+			expected.remove(1);
+			assertSections(backing,mode,expected);
+		}
+	}
+
+	private static VirtualMemory reopen(SegmentedArrayStore backing, AllocationMode mode) {
+		VirtualMemory read = new VirtualMemory(backing,BitSystem.X32,mode);
+		read.readIndex();
+		return read;
+	}
+
+	private static void assertSections(SegmentedArrayStore backing, AllocationMode mode, List<byte[]> expected) {
+		VirtualMemory read = reopen(backing,mode);
+		assertEquals(expected.size(),read.sectionCount(),mode.name());
+		for (int i = 0; i < expected.size(); i++) {
+			Section section = read.get(i);
+			assertArrayEquals(expected.get(i),section.read(0,section.size()),mode+" section "+i);
+		}
+	}
+
+	private VirtualMemory relocatingMemory() {
+		store.cut(0);
+		VirtualMemory relocating = new VirtualMemory(store,BitSystem.X8,AllocationMode.RELOCATING);
+		relocating.initIndex(1);
+		assertEquals(4*relocating.getBits().getBase(),relocating.getSectionHeaderSize());
+		return relocating;
+	}
+}
@@ -0,0 +1,48 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.StorageException;
+import com.niton.memory.direct.DataStore;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncFileStoreTest extends DataStoreTest {
+	@Override
+	protected DataStore createDataStoreImpl() {
+		try {
+			File f = new File("async.dat");
+			f.delete();
+			return new AsyncFileStore(f);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	@Test
+	void manyReadsInFlight() {
+		byte[] data = new byte[4096];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) i;
+		store.jump(0);
+		store.write(data);
+		List<CompletableFuture<ByteBuffer>> reads = new ArrayList<>();
+		for (int i = 0; i < data.length; i += 64)
+			reads.add(store.readAsync(i, i + 64));
+		CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).join();
+		for (int i = 0; i < reads.size(); i++) {
+			ByteBuffer read = reads.get(i).join();
+			assertEquals(64, read.remaining());
+			assertEquals((byte) (i * 64), read.get(0));
+		}
+		//behind the end of the file
+		ByteBuffer tail = store.readAsync(data.length - 2, data.length + 2).join();
+		assertEquals(0, tail.get(3));
+	}
+}
@@ -0,0 +1,51 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.memory.direct.DataStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachedStoreTest extends DataStoreTest {
+	private ArrayStore backing;
+
+	@Override
+	protected DataStore createDataStoreImpl() {
+		backing = new ArrayStore(2049);
+		//tiny cache so that pages are evicted all the time
+		return new CachedStore(backing, 4, 3, CachedStore.WritePolicy.WRITE_BACK, false);
+	}
+
+	@Test
+	void writeBack() {
+		CachedStore cache = (CachedStore) store;
+		store.jump(0);
+		store.write(new byte[]{1, 2, 3});
+		assertEquals(0, backing.size());
+		cache.flush();
+		assertArrayEquals(new byte[]{1, 2, 3}, backing.read(0, 3));
+	}
+
+	@Test
+	void writeThroughPage() {
+		CachedStore cache = (CachedStore) store;
+		cache.setWritePolicy(0, 4, CachedStore.WritePolicy.WRITE_THROUGH);
+		store.jump(2);
+		store.write(new byte[]{1, 2, 3, 4});
+		assertArrayEquals(new byte[]{0, 0, 1, 2}, backing.read(0, 4));
+		assertEquals(CachedStore.WritePolicy.WRITE_BACK, cache.getWritePolicy(4));
+		cache.flush();
+		assertArrayEquals(new byte[]{0, 0, 1, 2, 3, 4}, backing.read(0, 6));
+	}
+
+	@Test
+	void offHeap() {
+		CachedStore cache = new CachedStore(backing, 8, 2, CachedStore.WritePolicy.WRITE_THROUGH, true);
+		byte[] data = new byte[40];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		cache.write(data, 0, data.length);
+		assertArrayEquals(data, backing.read(0, data.length));
+		assertArrayEquals(data, cache.read(0, data.length));
+	}
+}
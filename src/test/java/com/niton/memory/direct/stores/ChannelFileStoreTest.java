@@ -0,0 +1,77 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.StorageException;
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.SyncPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChannelFileStoreTest extends DataStoreTest {
+	@Override
+	protected DataStore createDataStoreImpl() {
+		try {
+			File f = new File("channel.dat");
+			f.delete();
+			return new ChannelFileStore(f, 16);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	@Test
+	void extents() throws IOException {
+		ChannelFileStore channelStore = (ChannelFileStore) store;
+		store.jump(0);
+		store.write(new byte[]{1, 2, 3});
+		assertEquals(3, store.size());
+		assertEquals(16, channelStore.getChannel().size());
+		store.jump(15);
+		store.write(new byte[]{4, 5});
+		assertEquals(17, store.size());
+		assertEquals(32, channelStore.getChannel().size());
+		channelStore.sync();
+		assertEquals(17, channelStore.getChannel().size(), "A synced store has to be opened with its logical size");
+		store.jump(17);
+		store.write(new byte[]{6});
+		assertTrue(channelStore.getChannel().size() > 18, "Writing behind the end has to reserve space again");
+		channelStore.close();
+		assertEquals(18, new File("channel.dat").length());
+	}
+
+	@Test
+	void backgroundSync() throws IOException {
+		File f = new File("background-channel.dat");
+		f.delete();
+		for (long extentSize : new long[]{ChannelFileStore.NO_PREALLOCATION, 16}) {
+			try (ChannelFileStore channelStore = new ChannelFileStore(f, extentSize)) {
+				channelStore.cut(0);
+				channelStore.setSyncPolicy(SyncPolicy.everyMillis(1));
+				byte[] data = new byte[5000];
+				for (int i = 0; i < data.length; i++) {
+					data[i] = (byte) (i % 127 + 1);
+					channelStore.write(new byte[]{data[i]}, i, i + 1);
+				}
+				assertArrayEquals(data, channelStore.read(0, data.length), "A sync in the background must not cut away written data");
+			}
+		}
+		f.delete();
+	}
+
+	@Test
+	void noPreallocation() throws IOException {
+		File f = new File("unpadded-channel.dat");
+		f.delete();
+		try (ChannelFileStore unpadded = new ChannelFileStore(f)) {
+			unpadded.write(new byte[10], 0, 10);
+			assertEquals(10, f.length(), "The file must not be padded by default");
+			try (ChannelFileStore reopened = new ChannelFileStore(f)) {
+				assertEquals(10, reopened.size());
+			}
+		}
+		f.delete();
+	}
+}
@@ -0,0 +1,79 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.managed.BitSystem;
+import com.niton.memory.direct.managed.Section;
+import com.niton.memory.direct.managed.VirtualMemory;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChecksummedStoreTest extends DataStoreTest {
+	private SegmentedArrayStore backing;
+	private SegmentedArrayStore checksums;
+
+	@Override
+	protected DataStore createDataStoreImpl() {
+		backing = new SegmentedArrayStore(64);
+		checksums = new SegmentedArrayStore(64);
+		//small pages so that most operations span multiple pages
+		return new ChecksummedStore(backing, checksums, 8);
+	}
+
+	@Test
+	void detectsCorruption() {
+		byte[] data = new byte[100];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i * 7);
+		store.jump(0);
+		store.cut();
+		store.write(data);
+		assertTrue(store.verify());
+
+		backing.write(new byte[]{42}, 50, 51);
+		ChecksummedStore reopened = new ChecksummedStore(backing, checksums, 1);
+		assertEquals(8, reopened.getPageSize());
+		assertArrayEquals(Arrays.copyOf(data, 48), reopened.read(0, 48));
+		assertThrows(ChecksummedStore.ChecksumException.class, () -> reopened.read(45, 55));
+		assertFalse(reopened.verify());
+		assertTrue(reopened.verify(56, 100));
+		//overwriting the whole corrupted page repairs it
+		reopened.write(new byte[8], 48, 56);
+		assertTrue(reopened.verify());
+	}
+
+	@Test
+	void existingData() {
+		SegmentedArrayStore existing = new SegmentedArrayStore();
+		existing.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, 0, 10);
+		SegmentedArrayStore sums = new SegmentedArrayStore();
+		ChecksummedStore checked = new ChecksummedStore(existing, sums, 4);
+		assertEquals(4 + 3 * 4, sums.size());
+		assertTrue(new ChecksummedStore(existing, sums).verify());
+		checked.cut(6);
+		assertEquals(4 + 2 * 4, sums.size());
+		assertTrue(new ChecksummedStore(existing, sums).verify());
+	}
+
+	@Test
+	void verifyMemory() {
+		SegmentedArrayStore data = new SegmentedArrayStore();
+		SegmentedArrayStore sums = new SegmentedArrayStore();
+		VirtualMemory memory = new VirtualMemory(new ChecksummedStore(data, sums, 16), BitSystem.X64);
+		memory.initIndex(4);
+		for (int i = 0; i < 20; i++) {
+			Section section = memory.createSection(32, 1);
+			section.write(new byte[]{(byte) i, 1, 2, 3, 4, 5, 6, 7, 8, 9}, 0, 10);
+		}
+		assertTrue(memory.verify());
+		long victim = memory.get(13).getStartAddress();
+		data.write(new byte[]{-1}, victim + 3, victim + 4);
+
+		VirtualMemory reopened = new VirtualMemory(new ChecksummedStore(data, sums), BitSystem.X64);
+		reopened.readIndex();
+		assertArrayEquals(new byte[]{12, 1, 2}, reopened.get(12).read(0, 3));
+		assertFalse(reopened.verify());
+	}
+}
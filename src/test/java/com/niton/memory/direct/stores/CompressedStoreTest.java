@@ -0,0 +1,66 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.memory.direct.DataStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedStoreTest extends DataStoreTest {
+	private SegmentedArrayStore backing;
+
+	@Override
+	protected DataStore createDataStoreImpl() {
+		backing = new SegmentedArrayStore(64);
+		//tiny blocks and cache so that blocks are compressed all the time
+		return new CompressedStore(backing, 16, 2);
+	}
+
+	@Test
+	void compresses() {
+		CompressedStore compressed = new CompressedStore(new SegmentedArrayStore(), 4096, 2);
+		byte[] data = new byte[64 * 1024];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i % 7);
+		compressed.jump(0);
+		compressed.write(data);
+		compressed.flush();
+		assertTrue(compressed.getStore().size() < data.length / 5, "Repeating data should compress well");
+		assertTrue(compressed.compressedSize(0) > 0);
+		assertArrayEquals(data, compressed.read(0, data.length));
+	}
+
+	@Test
+	void reopen() {
+		byte[] data = new byte[100];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i * 31);
+		store.jump(3);
+		store.write(data);
+		((CompressedStore) store).flush();
+		CompressedStore reopened = new CompressedStore(backing, 1, 1);
+		assertEquals(16, reopened.getBlockSize());
+		assertEquals(103, reopened.size());
+		assertArrayEquals(data, reopened.read(3, 103));
+	}
+
+	@Test
+	void growingBlockKeepsOthers() {
+		CompressedStore compressed = (CompressedStore) store;
+		byte[] zeros = new byte[64];
+		compressed.jump(0);
+		compressed.write(zeros);
+		compressed.sync();
+		//the first block compresses worse now, its section has to grow in the middle of the memory
+		byte[] noise = new byte[16];
+		new Random(7).nextBytes(noise);
+		compressed.jump(0);
+		compressed.write(noise);
+		compressed.sync();
+		CompressedStore reopened = new CompressedStore(backing, 16, 1);
+		assertEquals(64, reopened.size());
+		assertArrayEquals(noise, reopened.read(0, 16));
+		assertArrayEquals(new byte[48], reopened.read(16, 64));
+	}
+}
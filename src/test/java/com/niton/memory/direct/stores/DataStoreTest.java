@@ -1,11 +1,19 @@
 package com.niton.memory.direct.stores;
 
+import com.niton.collections.backed.Serializer;
+import com.niton.memory.direct.Cursor;
 import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.managed.BitSystem;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -33,6 +41,16 @@ public abstract class DataStoreTest {
 		assertEquals(store.size(), store.getMarker());
 	}
 
+	@Test
+	void cutClearsData() {
+		store.jump(0);
+		store.write(new byte[]{1,2,3,4,5,6,7,8,9,10});
+		store.cut(5);
+		store.jump(8);
+		store.write(8);
+		assertArrayEquals(new byte[]{0,0,0,8}, store.read(5,9), "cut bytes have to read as 0 when the store grows again");
+	}
+
 	@Test
 	void shiftAll() {
 		store.bufferSize = 1;
@@ -144,4 +162,188 @@ public abstract class DataStoreTest {
 		assertEquals(40,max);
 		assertEquals(0, min);
 	}
-}
\ No newline at end of file
+
+	@Test
+	void byteBuffers(){
+		store.jump(0);
+		store.cut();
+		ByteBuffer src = ByteBuffer.allocateDirect(10);
+		for (int i = 0; i < 10; i++) {
+			src.put((byte) (i+1));
+		}
+		src.flip();
+		store.write(0, src);
+		assertFalse(src.hasRemaining());
+		assertEquals(10, store.size());
+		assertArrayEquals(new byte[]{1,2,3,4,5,6,7,8,9,10}, store.read(0,10));
+
+		ByteBuffer dst = ByteBuffer.allocate(6);
+		dst.put((byte) 42);
+		store.read(3, dst);
+		assertFalse(dst.hasRemaining());
+		assertArrayEquals(new byte[]{42,4,5,6,7,8}, dst.array());
+	}
+
+	@Test
+	void words(){
+		store.jump(0);
+		store.cut();
+		store.writeWord(0, 0x0102030405060708L, BitSystem.X64);
+		assertEquals(0, store.getMarker(), "positional writes must not change the marker");
+		store.writeWord(8, -2, BitSystem.X32);
+		store.writeWord(12, 300, BitSystem.X16);
+		store.writeWord(14, -1, BitSystem.X8);
+		assertEquals(15, store.size());
+		assertArrayEquals(new byte[]{1,2,3,4,5,6,7,8,-1,-1,-1,-2,1,44,-1}, store.read(0,15));
+		assertEquals(0x0102030405060708L, store.readWord(0, BitSystem.X64));
+		assertEquals(-2, store.readWord(8, BitSystem.X32));
+		assertEquals(300, store.readWord(12, BitSystem.X16));
+		assertEquals(-1, store.readWord(14, BitSystem.X8));
+		assertEquals(0, store.getMarker(), "positional reads must not change the marker");
+		assertEquals(0x0304, store.readWord(2, BitSystem.X16));
+	}
+
+	@Test
+	void move(){
+		store.bufferSize = 7;
+		store.jump(0);
+		store.cut();
+		byte[] data = new byte[500];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		store.write(data);
+		store.jump(3);
+		store.move(0, 100, 500);
+		assertEquals(3, store.getMarker(), "move must not change the marker");
+		assertEquals(600, store.size());
+		assertArrayEquals(data, store.read(100, 600));
+		store.move(100, 1, 500);
+		assertArrayEquals(data, store.read(1, 501));
+	}
+
+	@Test
+	void async(){
+		store.jump(0);
+		store.cut();
+		byte[] data = new byte[]{1,2,3,4,5,6,7,8,9,10};
+		store.write(data);
+		store.jump(2);
+		CompletableFuture<ByteBuffer> first = store.readAsync(0, 5);
+		CompletableFuture<ByteBuffer> second = store.readAsync(5, 10);
+		assertArrayEquals(new byte[]{1,2,3,4,5}, toArray(first.join()));
+		assertArrayEquals(new byte[]{6,7,8,9,10}, toArray(second.join()));
+		store.writeAsync(8, ByteBuffer.wrap(new byte[]{11,12,13})).join();
+		assertEquals(2, store.getMarker(), "async operations must not change the marker");
+		assertEquals(11, store.size());
+		assertArrayEquals(new byte[]{7,8,11,12,13}, store.read(6, 11));
+	}
+
+	@Test
+	void cursors(){
+		store.jump(0);
+		store.cut();
+		store.write(new byte[]{1,2,3,4,5,6,7,8,9,10});
+		store.jump(4);
+		Cursor first = store.openCursor();
+		Cursor second = store.openCursor(6);
+		assertEquals(1, first.read());
+		assertEquals(7, second.read());
+		assertArrayEquals(new byte[]{2,3}, first.readNext(2));
+		assertArrayEquals(new byte[]{8,9}, second.readNext(2));
+		second.write(new byte[]{11,12});
+		assertEquals(11, second.getPosition());
+		assertEquals(0x0405060708090B0CL, first.readWord(BitSystem.X64));
+		assertEquals(11, first.getPosition());
+		assertEquals(4, store.getMarker(), "cursors must not change the marker");
+
+		store.openCursor(2).write("cursor", Serializer.STRING);
+		assertEquals("cursor", store.openCursor(2).read(Serializer.STRING));
+		assertEquals(4, store.getMarker(), "cursors must not change the marker");
+	}
+
+	@Test
+	void lazyStreams(){
+		store.bufferSize = 7;
+		store.jump(0);
+		store.cut();
+		byte[] data = new byte[1000];
+		long sum = 0;
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * 31);
+			sum += data[i] & 0xFF;
+		}
+		store.write(data);
+		store.jump(0);
+		assertEquals(sum, store.bytes().asLongStream().sum());
+		assertEquals(sum, store.bytes().parallel().asLongStream().sum());
+		assertArrayEquals(Arrays.copyOfRange(data, 10, 20), toBytes(store.bytes(10, 20).toArray()));
+		assertEquals(data.length, store.stream().parallel().count());
+		assertEquals(data[500], store.stream().skip(500).findFirst().get());
+
+		List<ByteBuffer> chunks = store.chunks(0, 1000, 64).parallel().collect(Collectors.toList());
+		assertEquals(16, chunks.size());
+		assertEquals(40, chunks.get(15).remaining());
+		ByteBuffer joined = ByteBuffer.allocate(data.length);
+		chunks.forEach(joined::put);
+		assertArrayEquals(data, joined.array());
+		assertEquals(0, store.getMarker(), "streams must not change the marker");
+	}
+
+	@Test
+	void copyRange(){
+		store.jump(0);
+		store.cut();
+		byte[] data = new byte[300];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * 13);
+		}
+		store.write(data);
+		store.jump(7);
+		SegmentedArrayStore target = new SegmentedArrayStore(16);
+		target.write(new byte[]{-1,-1,-1,-1,-1}, 0, 5);
+		store.copyRange(10, 300, target, 5);
+		assertEquals(295, target.size());
+		assertArrayEquals(Arrays.copyOfRange(data, 10, 300), target.read(5, 295));
+		assertEquals(255, target.read(4));
+
+		SegmentedArrayStore bigger = new SegmentedArrayStore();
+		bigger.write(new byte[500], 0, 500);
+		assertEquals(300, store.transferTo(bigger));
+		assertEquals(300, bigger.size());
+		assertArrayEquals(data, bigger.readFull());
+		assertEquals(7, store.getMarker(), "copying must not change the marker");
+
+		ArrayStore source = new ArrayStore(100);
+		source.write(new byte[]{9,8,7}, 0, 3);
+		source.transferTo(store);
+		assertEquals(3, store.size());
+		assertArrayEquals(new byte[]{9,8,7}, store.readFull());
+	}
+
+	@Test
+	void preload(){
+		store.jump(0);
+		store.cut();
+		store.write(new byte[1000]);
+		store.jump(5);
+		long[] loaded = {0};
+		store.preload(100, 20_000, bytes -> loaded[0] += bytes);
+		assertEquals(900, loaded[0], "only bytes inside the store are loaded");
+		assertEquals(5, store.getMarker());
+	}
+
+	private static byte[] toBytes(int[] unsigned){
+		byte[] res = new byte[unsigned.length];
+		for (int i = 0; i < unsigned.length; i++) {
+			res[i] = (byte) unsigned[i];
+		}
+		return res;
+	}
+
+	private static byte[] toArray(ByteBuffer buffer){
+		byte[] res = new byte[buffer.remaining()];
+		buffer.get(res);
+		return res;
+	}
+}
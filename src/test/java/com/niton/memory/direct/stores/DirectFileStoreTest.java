@@ -0,0 +1,56 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.StorageException;
+import com.niton.memory.direct.DataStore;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DirectFileStoreTest extends DataStoreTest {
+	@Override
+	protected DataStore createDataStoreImpl() {
+		try {
+			File f = new File("direct.dat");
+			f.delete();
+			return new DirectFileStore(f);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	@Test
+	void alignment() throws IOException {
+		DirectFileStore directStore = (DirectFileStore) store;
+		int block = directStore.getBlockSize();
+		store.jump(block - 2);
+		store.write(new byte[]{1, 2, 3, 4});
+		assertEquals(block + 2, store.size());
+		assertEquals(2L * block, new File("direct.dat").length(), "Only whole blocks are written");
+		store.jump(block);
+		store.write(new byte[]{9});
+		assertArrayEquals(new byte[]{0, 1, 2, 9, 4}, store.read(block - 3, block + 2));
+		directStore.close();
+		assertEquals(block + 2, new File("direct.dat").length());
+	}
+
+	@Test
+	void reopenWithoutClose() throws IOException {
+		File f = new File("direct-sync.dat");
+		f.delete();
+		DirectFileStore directStore = new DirectFileStore(f);
+		directStore.write(new byte[]{1, 2, 3}, 0, 3);
+		directStore.sync();
+		DirectFileStore reopened = new DirectFileStore(f);
+		assertEquals(3, reopened.size(), "A synced store has to be opened with its logical size");
+		assertArrayEquals(new byte[]{1, 2, 3}, reopened.read(0, 3));
+		reopened.close();
+		directStore.write(new byte[]{4}, 3, 4);
+		assertArrayEquals(new byte[]{1, 2, 3, 4}, directStore.read(0, 4));
+		directStore.close();
+		assertEquals(4, f.length());
+		f.delete();
+	}
+}
@@ -0,0 +1,30 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.memory.direct.DataStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectStoreTest extends DataStoreTest {
+
+	@Override
+	protected DataStore createDataStoreImpl() {
+		//tiny chunks so that most operations cross chunk borders
+		return new DirectStore(7);
+	}
+
+	@Test
+	void releaseOnCut() {
+		DirectStore direct = (DirectStore) store;
+		store.jump(0);
+		store.write(new byte[100]);
+		assertEquals(105, direct.capacity());
+		store.cut(10);
+		assertEquals(14, direct.capacity());
+		store.cut(0);
+		assertEquals(0, direct.capacity());
+		store.jump(0);
+		store.write(new byte[]{1, 2, 3});
+		assertArrayEquals(new byte[]{1, 2, 3}, store.read(0, 3));
+	}
+}
@@ -2,9 +2,18 @@ package com.niton.memory.direct.stores;
 
 import com.niton.StorageException;
 import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.SyncPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class FileStoreTest extends DataStoreTest {
 	@Override
@@ -19,4 +28,133 @@ public class FileStoreTest extends DataStoreTest {
 			throw new StorageException(e);
 		}
 	}
+
+	/**
+	 * All tests share the same file
+	 */
+	@AfterEach
+	void empty() {
+		store.cut(0);
+	}
+
+	@Test
+	void syncPolicies() throws Exception {
+		File f = new File("sync.dat");
+		f.deleteOnExit();
+		CountDownLatch synced = new CountDownLatch(1);
+		FileStore counting = new FileStore(f) {
+			@Override
+			public void sync() {
+				super.sync();
+				synced.countDown();
+			}
+		};
+		counting.cut(0);
+		counting.setSyncPolicy(SyncPolicy.perOperation());
+		counting.jump(0);
+		counting.write(new byte[]{1, 2, 3});
+		assertEquals(0, synced.getCount(), "Per operation has to sync on every write");
+
+		CountDownLatch background = new CountDownLatch(1);
+		FileStore periodic = new FileStore(f) {
+			@Override
+			public void sync() {
+				super.sync();
+				background.countDown();
+			}
+		};
+		periodic.setSyncPolicy(SyncPolicy.everyBytes(4));
+		periodic.jump(0);
+		periodic.write(new byte[]{1, 2});
+		periodic.write(new byte[]{3, 4});
+		assertTrue(background.await(5, TimeUnit.SECONDS), "Sync after 4 bytes expected");
+	}
+
+	@Test
+	void preallocation() throws IOException {
+		File f = new File("prealloc.dat");
+		f.delete();
+		FileStore fileStore = new FileStore(new RandomAccessFile(f, "rw"), 16);
+		fileStore.jump(0);
+		fileStore.write(new byte[]{1, 2, 3});
+		assertEquals(3, fileStore.size());
+		assertEquals(16, f.length());
+		fileStore.jump(16);
+		fileStore.write(new byte[]{4});
+		assertEquals(17, fileStore.size());
+		assertEquals(32, f.length());
+		fileStore.jump(32);
+		fileStore.write(new byte[]{5});
+		assertEquals(48, f.length(), "The file has to grow by half of its size");
+		fileStore.cut(2);
+		fileStore.jump(4);
+		fileStore.write(new byte[]{6});
+		assertArrayEquals(new byte[]{1, 2, 0, 0, 6}, fileStore.read(0, 5), "Cut bytes have to read as 0");
+		fileStore.sync();
+		assertEquals(5, new FileStore(f).size(), "A synced store has to be opened with its logical size");
+		fileStore.jump(5);
+		fileStore.write(new byte[]{7});
+		assertTrue(f.length() > 6, "Writing behind the end has to reserve space again");
+		fileStore.close();
+		assertEquals(6, f.length());
+		f.delete();
+	}
+
+	@Test
+	void backgroundSync() throws IOException {
+		File f = new File("background.dat");
+		f.delete();
+		for (FileStore fileStore : new FileStore[]{new FileStore(f), new FileStore(new RandomAccessFile(f, "rw"), 16)}) {
+			fileStore.cut(0);
+			fileStore.setSyncPolicy(SyncPolicy.everyMillis(1));
+			byte[] data = new byte[5000];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = (byte) (i % 127 + 1);
+				fileStore.write(new byte[]{data[i]}, i, i + 1);
+			}
+			assertArrayEquals(data, fileStore.read(0, data.length), "A sync in the background must not cut away written data");
+			fileStore.close();
+		}
+		f.delete();
+	}
+
+	@Test
+	void noPreallocation() throws IOException {
+		File f = new File("unpadded.dat");
+		f.delete();
+		FileStore fileStore = new FileStore(f);
+		fileStore.jump(0);
+		fileStore.write(new byte[10]);
+		assertEquals(10, f.length(), "The file must not be padded by default");
+		assertEquals(10, new FileStore(f).size());
+		fileStore.close();
+		f.delete();
+	}
+
+	@Test
+	void channelTransfer() throws IOException {
+		File copy = new File("copy.dat");
+		copy.delete();
+		copy.deleteOnExit();
+		store.jump(0);
+		store.cut();
+		byte[] data = new byte[100_000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i * 7);
+		store.write(data);
+		try (ChannelFileStore target = new ChannelFileStore(copy)) {
+			target.write(new byte[]{1, 2, 3}, 0, 3);
+			store.copyRange(1000, 100_000, target, 3);
+			assertEquals(99_003, target.size());
+			assertArrayEquals(new byte[]{1, 2, 3}, target.read(0, 3));
+			assertArrayEquals(Arrays.copyOfRange(data, 1000, 100_000), target.read(3, 99_003));
+
+			FileStore back = new FileStore(new RandomAccessFile(copy.getPath() + ".back", "rw"));
+			new File(copy.getPath() + ".back").deleteOnExit();
+			back.cut(0);
+			assertEquals(99_003, target.transferTo(back));
+			assertArrayEquals(target.read(0, 99_003), back.readFull());
+			back.close();
+		}
+	}
 }
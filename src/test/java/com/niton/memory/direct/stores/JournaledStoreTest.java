@@ -0,0 +1,151 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.memory.direct.DataStore;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournaledStoreTest extends DataStoreTest {
+	private SegmentedArrayStore main;
+	private SyncCountingStore log;
+
+	@Override
+	protected DataStore createDataStoreImpl() {
+		main = new SegmentedArrayStore(16);
+		log = new SyncCountingStore();
+		//tiny pages so that most operations cross page borders
+		return new JournaledStore(main, log, 4, 0);
+	}
+
+	@Test
+	void recover() {
+		JournaledStore journaled = (JournaledStore) store;
+		store.jump(0);
+		store.write(new byte[]{1, 2, 3, 4, 5});
+		store.cut(4);
+		journaled.commit();
+		store.jump(0);
+		store.write(new byte[]{9, 9});
+		assertEquals(0, main.size(), "The main store is only written by checkpoints");
+
+		//simulates a crash, the uncommitted write is lost
+		JournaledStore recovered = new JournaledStore(main, log, 4, 0);
+		assertEquals(4, recovered.size());
+		assertArrayEquals(new byte[]{1, 2, 3, 4}, recovered.read(0, 4));
+		assertEquals(0, log.size());
+	}
+
+	@Test
+	void tornRecord() {
+		store.jump(0);
+		store.write(new byte[]{1, 2, 3});
+		((JournaledStore) store).commit();
+		store.write(new byte[]{4, 5, 6});
+		((JournaledStore) store).commit();
+		//the last record was only partially written
+		log.cut(log.size() - 2);
+		JournaledStore recovered = new JournaledStore(main, log, 4, 0);
+		assertArrayEquals(new byte[]{1, 2, 3}, recovered.read(0, recovered.size()));
+	}
+
+	@Test
+	void checkpoint() {
+		JournaledStore journaled = (JournaledStore) store;
+		store.jump(0);
+		store.write(new byte[]{1, 2, 3, 4, 5, 6});
+		journaled.commit();
+		store.cut(2);
+		store.jump(5);
+		store.write(new byte[]{7});
+		journaled.checkpoint();
+		assertEquals(0, log.size());
+		assertArrayEquals(new byte[]{1, 2, 0, 0, 0, 7}, main.read(0, 6));
+		assertArrayEquals(new byte[]{1, 2, 0, 0, 0, 7}, store.read(0, 6));
+	}
+
+	@Test
+	void groupCommit() throws InterruptedException {
+		JournaledStore journaled = (JournaledStore) store;
+		store.write(0, ByteBuffer.wrap(new byte[]{1}));
+		store.write(1, ByteBuffer.wrap(new byte[]{2}));
+		journaled.commit();
+		journaled.commit();
+		assertEquals(1, log.syncs, "Nothing to commit must not sync");
+
+		//the first sync is blocked until all threads appended their write and a commit record follows them,
+		//so the commits of all threads that were not covered by it have to share the next sync
+		log.blockFirstSync(16);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 16; t++) {
+			int id = t;
+			threads.add(new Thread(() -> {
+				journaled.write(id, ByteBuffer.wrap(new byte[]{(byte) id}));
+				journaled.commit();
+			}));
+		}
+		threads.forEach(Thread::start);
+		for (Thread thread : threads)
+			thread.join();
+		assertTrue(log.appended, "The other commits were not appended while the first sync was running");
+		assertTrue(log.syncs - 1 <= 2, "Concurrent commits have to share syncs, but " + (log.syncs - 1) + " syncs were done for 16 commits");
+		JournaledStore recovered = new JournaledStore(main, log, 4, 0);
+		for (int i = 0; i < 16; i++)
+			assertEquals(i, recovered.read(i));
+	}
+
+	private static class SyncCountingStore extends SegmentedArrayStore {
+		private int syncs = 0;
+		private int writes = 0;
+		private volatile boolean appended = false;
+		private CountDownLatch committed;
+		private boolean blockSync = false;
+
+		private SyncCountingStore() {
+			super(64);
+		}
+
+		/**
+		 * The next sync waits until the given number of write records is followed by a commit record
+		 */
+		private synchronized void blockFirstSync(int writes) {
+			this.writes = writes;
+			committed = new CountDownLatch(1);
+			blockSync = true;
+		}
+
+		@Override
+		protected void innerWrite(long to, ByteBuffer src) {
+			byte type = src.get(src.position());
+			super.innerWrite(to, src);
+			synchronized (this) {
+				if (committed == null)
+					return;
+				if (type == JournaledStore.WRITE)
+					writes--;
+				else if (type == JournaledStore.COMMIT && writes <= 0)
+					committed.countDown();
+			}
+		}
+
+		@Override
+		public void sync() {
+			synchronized (this) {
+				syncs++;
+				if (!blockSync)
+					return;
+				blockSync = false;
+			}
+			try {
+				appended = committed.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.StorageException;
+import com.niton.memory.direct.DataStore;
+import com.niton.memory.direct.SyncPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedFileStoreTest extends DataStoreTest {
+	@Override
+	protected DataStore createDataStoreImpl() {
+		try {
+			File f = new File("mapped.dat");
+			f.delete();
+			//tiny regions so that most operations cross region borders
+			return new MappedFileStore(f, 7);
+		} catch (IOException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	@Test
+	void growsBeyondRegions() {
+		byte[] data = new byte[100];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		store.jump(0);
+		store.write(data);
+		assertEquals(100, store.size());
+		assertTrue(((MappedFileStore) store).capacity() >= 100);
+		assertArrayEquals(data, store.read(0, 100));
+		assertArrayEquals(new byte[]{5, 6, 7, 8, 9}, store.read(5, 10));
+	}
+
+	@Test
+	void close() throws IOException {
+		store.jump(0);
+		store.write(new byte[]{1, 2, 3, 4, 5});
+		store.cut(3);
+		((MappedFileStore) store).close();
+		assertEquals(3, new File("mapped.dat").length());
+	}
+
+	@Test
+	void syncRemovesReservedSpace() throws IOException {
+		File f = new File("mapped-sync.dat");
+		f.delete();
+		MappedFileStore mapped = new MappedFileStore(f);
+		mapped.write(new byte[]{1, 2, 3}, 0, 3);
+		assertEquals(MappedFileStore.MIN_GROWTH, f.length());
+		mapped.sync();
+		assertEquals(3, new MappedFileStore(f).size(), "A synced store has to be opened with its logical size");
+		mapped.write(new byte[]{4}, 3, 4);
+		assertTrue(f.length() > 4, "Writing behind the end has to reserve space again");
+		assertArrayEquals(new byte[]{1, 2, 3, 4}, mapped.read(0, 4));
+		mapped.close();
+		assertEquals(4, f.length());
+		f.delete();
+	}
+
+	@Test
+	void backgroundSync() throws IOException {
+		MappedFileStore mapped = (MappedFileStore) store;
+		mapped.setSyncPolicy(SyncPolicy.everyMillis(1));
+		byte[] data = new byte[5000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i % 127 + 1);
+			mapped.write(new byte[]{data[i]}, i, i + 1);
+		}
+		assertArrayEquals(data, mapped.read(0, data.length), "A sync in the background must not lose written data");
+		mapped.close();
+	}
+}
@@ -0,0 +1,54 @@
+package com.niton.memory.direct.stores;
+
+import com.niton.memory.direct.DataStore;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedArrayStoreTest extends DataStoreTest {
+
+	@Override
+	protected DataStore createDataStoreImpl() {
+		//tiny chunks so that most operations cross chunk borders
+		return new SegmentedArrayStore(7);
+	}
+
+	@Test
+	void releaseOnCut() {
+		SegmentedArrayStore segmented = (SegmentedArrayStore) store;
+		store.jump(0);
+		store.write(new byte[100]);
+		assertEquals(105, segmented.capacity());
+		store.cut(10);
+		assertEquals(14, segmented.capacity());
+		store.jump(12);
+		store.write(new byte[]{1});
+		assertArrayEquals(new byte[]{0, 0, 1}, store.read(10, 13), "cut bytes have to read as 0");
+		store.cut(0);
+		assertEquals(0, segmented.capacity());
+		store.jump(0);
+		store.write(new byte[]{1, 2, 3});
+		assertArrayEquals(new byte[]{1, 2, 3}, store.read(0, 3));
+	}
+
+	@Test
+	void cutToGrow() {
+		store.jump(0);
+		store.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+		//the new end lies in a chunk which is not allocated yet
+		store.cut(16);
+		assertEquals(16, store.size());
+		assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 0, 0, 0, 0, 0, 0}, store.read(0, 16), "growing must not clear data");
+		store.cut(3);
+		store.cut(30);
+		assertArrayEquals(new byte[]{1, 2, 3, 0, 0, 0, 0, 0, 0, 0}, store.read(0, 10));
+	}
+
+	@Test
+	void beyondIntegerRange() {
+		SegmentedArrayStore segmented = new SegmentedArrayStore(1024);
+		long address = Integer.MAX_VALUE + 10L;
+		assertDoesNotThrow(() -> segmented.read(address, address + 3));
+		assertArrayEquals(new byte[3], segmented.read(address, address + 3));
+	}
+}